@@ -2,6 +2,7 @@ package frc.robot;
 
 import static edu.wpi.first.units.Units.Degree;
 import static edu.wpi.first.units.Units.Inch;
+import static edu.wpi.first.units.Units.Meter;
 import static edu.wpi.first.units.Units.MetersPerSecond;
 import static edu.wpi.first.units.Units.Radian;
 
@@ -13,6 +14,7 @@ import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Rotation3d;
 import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.math.numbers.N1;
 import edu.wpi.first.math.numbers.N3;
@@ -22,6 +24,7 @@ import edu.wpi.first.units.measure.LinearVelocity;
 import frc.robot.helpers.PID;
 import frc.robot.helpers.POI;
 import frc.robot.helpers.PhotonConfig;
+import frc.robot.helpers.TagPoseTable;
 
 import java.util.Arrays;
 import java.util.Map;
@@ -37,6 +40,12 @@ public final class Constants {
 
     /** Maximum speed of the robot in meters per second. */
     public static final LinearVelocity MAX_SPEED = MetersPerSecond.of(5.45);
+
+    /** Period of the odometry thread in seconds. */
+    public static final double ODOMETRY_PERIOD = 0.004;
+
+    /** Number of odometry samples the odometry thread keeps for other threads to read. */
+    public static final int ODOMETRY_BUFFER_SIZE = 128;
   }
 
   /** Constants for the alga arm mechanism. */
@@ -241,32 +250,41 @@ public final class Constants {
 
   /** Constants for apriltag vision. */
   public static final class ApriltagConstants {
-    /** Photon cameras. */
+    /**
+     * Photon cameras with hand-measured transforms. Vision replaces the transforms of cameras
+     * calibrated in {@link #EXTRINSICS_FILE} when it starts.
+     */
     public static final PhotonConfig[] PHOTON_CAMERAS = {
       new PhotonConfig(
           "Front Left",
           new Transform3d(
               new Translation3d(0.27305, 0.28448, 0.2921),
               new Rotation3d(0, Degree.of(-20.0).in(Radian), Degree.of(-16.38).in(Radian))),
-          PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR),
+          PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR,
+          1.0),
       new PhotonConfig(
           "Back Right",
           new Transform3d(
               new Translation3d(-0.2794, -0.3175, 0.2921),
               new Rotation3d(0, Degree.of(-20.0).in(Radian), Degree.of(-196.38).in(Radian))),
-          PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR),
+          PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR,
+          1.0),
       new PhotonConfig(
           "Back Left",
           new Transform3d(
               new Translation3d(-0.28194, 0.3048, 0.2667),
               new Rotation3d(0.0, Degree.of(-10.0).in(Radian), Degree.of(196.38).in(Radian))),
-          PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR),
+          PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR,
+          1.0),
     };
 
     /** Field layout for apriltags. */
     public static final AprilTagFieldLayout FIELD_LAYOUT =
         AprilTagFieldLayout.loadField(AprilTagFields.k2025ReefscapeWelded);
 
+    /** Tag poses from the field layout, indexed by fiducial ID. */
+    public static final TagPoseTable TAG_POSES = new TagPoseTable(FIELD_LAYOUT);
+
     /** Maximum allowed ambiguity for pose estimation (0-1, lower is better) */
     public static final double MAXIMUM_AMBIGUITY = 0.1;
 
@@ -276,19 +294,234 @@ public final class Constants {
     /** Standard deviations for multi-tag pose estimation */
     public static final Matrix<N3, N1> MULTI_TAG_STD_DEVS = VecBuilder.fill(0.5, 0.5, 1);
 
-    /** Debounce time for camera reads in seconds */
+    /** Period at which each camera is polled by its ingest thread in seconds */
+    public static final double CAMERA_POLL_PERIOD = 0.010;
+
+    /** Vision observations older than this relative to the latest odometry are dropped (s) */
+    public static final double VISION_FUSION_HORIZON = 0.3;
+
+    /** Number of odometry samples kept for vision latency compensation, 0.5 s at full rate */
+    public static final int ODOMETRY_HISTORY_SIZE = 128;
+
+    /** Frames from different cameras this close in time are solved together (s) */
+    public static final double JOINT_SOLVE_SYNC_WINDOW = 0.025;
+
+    /** Maximum RMS corner reprojection error for a joint multi-camera solve in pixels */
+    public static final double JOINT_SOLVE_MAX_REPROJECTION_ERROR = 4.0;
+
+    /** Side length of the field cells tag visibility is predicted for (m) */
+    public static final double TAG_VISIBILITY_CELL_SIZE = 0.5;
+
+    /** Number of robot heading bins tag visibility is predicted for */
+    public static final int TAG_VISIBILITY_HEADING_BINS = 36;
+
+    /** Horizontal field of view of the apriltag cameras (rad) */
+    public static final double CAMERA_HORIZONTAL_FOV = Degree.of(70.0).in(Radian);
+
+    /** Vertical field of view of the apriltag cameras (rad) */
+    public static final double CAMERA_VERTICAL_FOV = Degree.of(50.0).in(Radian);
+
+    /** Tags further than this from a camera are not expected to be seen (m) */
+    public static final double TAG_VISIBILITY_MAX_DISTANCE = 5.0;
+
+    /** Tags viewed further than this off their facing are not expected to be seen (rad) */
+    public static final double TAG_VISIBILITY_MAX_VIEW_ANGLE = Degree.of(70.0).in(Radian);
+
+    /** A camera that misses every expected tag for this long is reported as blocked (s) */
+    public static final double CAMERA_BLIND_TIME = 1.0;
+
+    /** Vision poses this far outside the field rectangle are rejected (m) */
+    public static final double VISION_FIELD_MARGIN = 0.5;
+
+    /** Vision poses further than this above or below the floor are rejected (m) */
+    public static final double VISION_MAX_Z = 0.3;
+
+    /** Vision poses with a larger pitch or roll are rejected (rad) */
+    public static final double VISION_MAX_TILT = Degree.of(10.0).in(Radian);
+
+    /**
+     * Distance a vision pose may disagree with odometry right after a fix, on top of the drift
+     * odometry could have built up since (m)
+     */
+    public static final double VISION_JUMP_TOLERANCE = 0.5;
+
+    /** Worst rate at which wheel odometry drifts from the true pose, mostly wheel slip (m/s) */
+    public static final double ODOMETRY_DRIFT_RATE = 0.5;
+
+    /** Number of recent vision poses the consensus filter compares against */
+    public static final int CONSENSUS_CAPACITY = 32;
+
+    /** Vision poses older than this are left out of the consensus (s) */
+    public static final double CONSENSUS_WINDOW = 1.0;
+
+    /** Vision poses whose offsets from odometry are closer than this agree (m) */
+    public static final double CONSENSUS_DISTANCE = 0.3;
+
+    /** Vision poses whose heading offsets from odometry are closer than this agree (rad) */
+    public static final double CONSENSUS_ANGLE = Degree.of(8.0).in(Radian);
+
+    /** Minimum number of recent vision poses, counting the new one, to form a consensus */
+    public static final int CONSENSUS_MIN_SAMPLES = 3;
+
+    /** Vision poses captured within this long of each other are fused as one measurement (s) */
+    public static final double VISION_GROUP_WINDOW = 0.02;
+
+    /** Whether rejected corners and poses are sampled and published for diagnostics */
+    public static final boolean VISION_DIAGNOSTICS_ENABLED = false;
+
+    /** Minimum time between published rejection diagnostics samples per camera (s) */
+    public static final double VISION_DIAGNOSTICS_SAMPLE_PERIOD = 0.25;
+
+    /** Loop period above which vision sheds load until the robot loop catches up (s) */
+    public static final double VISION_LOOP_BUDGET = 0.025;
+
+    /** Minimum time between vision pose publishes to NetworkTables (s) */
+    public static final double VISION_PUBLISH_PERIOD = 0.05;
+
+    /** Period at which per-camera health and latency metrics are published (s) */
+    public static final double CAMERA_METRICS_PERIOD = 0.5;
+
+    /** Resolution of the simulated apriltag cameras, roughly an OV9281 (px) */
+    public static final int SIM_CAMERA_WIDTH = 800;
+
+    public static final int SIM_CAMERA_HEIGHT = 600;
+
+    /** Diagonal field of view of the simulated apriltag cameras (rad) */
+    public static final double SIM_CAMERA_DIAGONAL_FOV = Degree.of(90.0).in(Radian);
+
+    /** Mean and standard deviation of the simulated corner detection error (px) */
+    public static final double SIM_CAMERA_CORNER_ERROR = 0.35;
+
+    public static final double SIM_CAMERA_CORNER_ERROR_STD_DEV = 0.10;
+
+    /** Frame rate of the simulated apriltag cameras (fps) */
+    public static final double SIM_CAMERA_FPS = 30.0;
+
+    /** Mean and standard deviation of the simulated camera latency (ms) */
+    public static final double SIM_CAMERA_LATENCY = 35.0;
+
+    public static final double SIM_CAMERA_LATENCY_STD_DEV = 5.0;
+
+    /** Whether the simulated cameras publish video streams, slow on most machines */
+    public static final boolean SIM_CAMERA_VIDEO_STREAMS = false;
+
+    /** Number of recent simulated observations the scorers are compared on */
+    public static final int SIM_SCORER_SAMPLES = 2000;
+
+    /** Period at which the scorers are compared against simulated ground truth (s) */
+    public static final double SIM_SCORER_PERIOD = 5.0;
+
+    /** Calibrated camera transforms in the deploy directory */
+    public static final String EXTRINSICS_FILE = "camera_extrinsics.json";
+
+    /** Field pose the robot is placed at for extrinsic calibration, facing the blue reef */
+    public static final Pose2d CALIBRATION_POSE = new Pose2d(2.4, 4.026, Rotation2d.kZero);
+
+    /** Rate the robot turns in place during extrinsic calibration, slow to avoid blur (rad/s) */
+    public static final double CALIBRATION_ANGULAR_VELOCITY = 0.4;
+
+    /** Duration of the extrinsic calibration turn, a little over one turn (s) */
+    public static final double CALIBRATION_DURATION = 18.0;
+
+    /** Minimum time between recorded calibration frames per camera (s) */
+    public static final double CALIBRATION_FRAME_PERIOD = 0.1;
+
+    /** Cameras with fewer recorded frames are not calibrated */
+    public static final int CALIBRATION_MIN_FRAMES = 20;
+
+    /** Frames recorded per camera beyond this are ignored, bounding the solve time */
+    public static final int CALIBRATION_MAX_FRAMES = 200;
+
+    /** Calibrations with a larger RMS reprojection error are not saved (px) */
+    public static final double CALIBRATION_MAX_ERROR = 2.0;
+
+    /** Whether live cameras record their raw results for replay */
+    public static final boolean RECORD_VISION_LOGS = true;
+
+    /** Directory vision logs are recorded to, only used if it exists (USB stick on the roboRIO) */
+    public static final String VISION_LOG_DIRECTORY = "/U/logs/vision";
+
+    /** Environment variable naming a directory of vision logs to replay in simulation */
+    public static final String VISION_REPLAY_ENV = "VISION_REPLAY_DIR";
+
+    /** Time camera reads keep shedding load after the loop is back on budget in seconds */
     public static final double CAMERA_DEBOUNCE_TIME = 0.150;
 
     /** BULLSHIT */
     public static final double SINGLE_TAG_CUTOFF_METER = 3;
 
-    /** Maximum number of camera results to keep in memory */
+    /** Maximum number of the newest unread camera results solved per camera update */
     public static final int MAX_CAMERA_RESULTS = 5;
 
     /** Value indicating no ambiguity in pose estimation */
     public static final int NO_AMBIGUITY = -100;
   }
 
+  /** Constants for coral object detection and tracking. */
+  public static final class CoralDetectionConstants {
+    private CoralDetectionConstants() {}
+
+    /** Name of the object detection camera in PhotonVision. */
+    public static final String CAMERA_NAME = "Coral";
+
+    /** Transform from the robot to the object detection camera. */
+    public static final Transform3d ROBOT_TO_CAMERA =
+        new Transform3d(
+            new Translation3d(0.25, 0.0, 0.45), new Rotation3d(0, Degree.of(30.0).in(Radian), 0));
+
+    /** Height of the center of a coral lying on the floor (m) */
+    public static final double CORAL_HEIGHT = Inch.of(4.5).in(Meter) / 2;
+
+    /** Detections below this confidence are ignored (0-1) */
+    public static final double MIN_CONFIDENCE = 0.5;
+
+    /** Detections that project further than this from the camera are ignored (m) */
+    public static final double MAX_RANGE = 4.0;
+
+    /** Standard deviation of the detection angles, sets the measurement noise (rad) */
+    public static final double ANGLE_STD_DEV = Degree.of(1.0).in(Radian);
+
+    /** Growth of a track's position standard deviation per square root second (m) */
+    public static final double PROCESS_NOISE = 0.2;
+
+    /** Detections within this distance of a track update it instead of starting a new one (m) */
+    public static final double ASSOCIATION_DISTANCE = 0.5;
+
+    /** Number of detections before a track is trusted */
+    public static final int CONFIRM_HITS = 3;
+
+    /** Tracks without a detection for this long are dropped (s) */
+    public static final double TRACK_TIMEOUT = 2.0;
+
+    /** Maximum number of tracked coral */
+    public static final int MAX_TRACKS = 16;
+
+    /** Tracks this close to the intake when a coral is picked up are dropped (m) */
+    public static final double PICKUP_RADIUS = 0.75;
+
+    /** Distance the robot center stops short of a coral when driving to it (m) */
+    public static final double INTAKE_OFFSET = 0.5;
+
+    /** Coral placed on the simulated field, the starting marks of both alliances. */
+    public static final Translation2d[] SIM_CORAL = {
+      new Translation2d(1.22, 2.2),
+      new Translation2d(1.22, 4.03),
+      new Translation2d(1.22, 5.85),
+      new Translation2d(FieldConstants.FIELD_LENGTH_METERS - 1.22, 2.2),
+      new Translation2d(FieldConstants.FIELD_LENGTH_METERS - 1.22, 4.03),
+      new Translation2d(FieldConstants.FIELD_LENGTH_METERS - 1.22, 5.85),
+    };
+
+    /** Horizontal field of view of the simulated camera (rad) */
+    public static final double SIM_HORIZONTAL_FOV = Degree.of(70.0).in(Radian);
+
+    /** Vertical field of view of the simulated camera (rad) */
+    public static final double SIM_VERTICAL_FOV = Degree.of(50.0).in(Radian);
+
+    /** Chance the simulated camera misses a coral that is in view each frame (0-1) */
+    public static final double SIM_MISS_RATE = 0.1;
+  }
+
   /** Constants for field positions and points of interest */
   public static final class FieldConstants {
     private FieldConstants() {}
@@ -299,6 +532,15 @@ public final class Constants {
     /** Field width in meters. */
     public static final double FIELD_WIDTH_METERS = 8.052;
 
+    /** Cell size of the precomputed closest POI map in meters. */
+    public static final double POI_MAP_CELL_SIZE = 0.1;
+
+    /**
+     * How much closer another POI must be than the current one before auto heading switches to it,
+     * in meters. Larger than half a map cell diagonal so that map error cannot cause a switch.
+     */
+    public static final double POI_HEADING_HYSTERESIS = 0.15;
+
     /** All consolidated points of interest on the field */
     public static final POI[] ALL_POIS = {
       // Intake stations
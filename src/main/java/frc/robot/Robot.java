@@ -1,8 +1,11 @@
 package frc.robot;
 
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.subsystems.Swerve;
 
 /**
  * Main robot class that manages the robot's lifecycle and operational modes. This class follows the
@@ -35,6 +38,9 @@ public class Robot extends TimedRobot {
 
   // Private constructor for singleton
   private Robot() {
+    // Logs to the USB stick if one is plugged in, otherwise the roboRIO. Open with AdvantageScope
+    DataLogManager.start();
+    DriverStation.startDataLog(DataLogManager.getLog());
     robotContainer = new RobotContainer();
   }
 
@@ -58,6 +64,7 @@ public class Robot extends TimedRobot {
    */
   @Override
   public void robotPeriodic() {
+    Swerve.getInstance().updateState();
     CommandScheduler.getInstance().run();
   }
 
@@ -18,6 +18,7 @@ import frc.robot.Constants.OIConstants;
 import frc.robot.commands.*;
 import frc.robot.helpers.CustomSwerveInput;
 import frc.robot.subsystems.*;
+import frc.robot.subsystems.vision.CoralDetection;
 import frc.robot.subsystems.vision.Vision;
 
 /**
@@ -59,6 +60,7 @@ public class RobotContainer {
               swerveDrive.getSwerveDrive(),
               () -> driverController.getLeftY() * -1,
               () -> driverController.getLeftX() * -1)
+          .withPoseSupplier(swerveDrive::getPose)
           .cubeTranslationControllerAxis(true)
           .scaleTranslation(0.75)
           .scaleTranslation(() -> driverController.rightBumper().getAsBoolean(), 0.5)
@@ -95,9 +97,11 @@ public class RobotContainer {
   private final Climb climb = Climb.getInstance();
 
   /** Apriltag subsystem for handling apriltags */
-  @SuppressWarnings("unused")
   private final Vision apriltag = Vision.getInstance();
 
+  /** Coral detection subsystem for tracking coral on the field */
+  private final CoralDetection coralDetection = CoralDetection.getInstance();
+
   // Add the SendableChooser for autonomous
   private final SendableChooser<Command> autoChooser = new SendableChooser<>();
 
@@ -163,6 +167,9 @@ public class RobotContainer {
                   }
                 }));
 
+    // INTAKE ASSIST - Drive to the nearest tracked coral while holding Y
+    driverController.y().whileTrue(coralDetection.driveToNearestCoral());
+
     // MANUAL OVERRIDE - Use raw input without auto heading when holding left bumper
     driverController.leftBumper().whileTrue(swerveDrive.driveFieldOriented(driveInputStream));
 
@@ -239,6 +246,9 @@ public class RobotContainer {
     autoChooser.addOption("Right to Reef", AutoCommands.rightToReef());
     autoChooser.addOption("Victory Lap", AutoCommands.victoryLap());
     SmartDashboard.putData("Auto Chooser", autoChooser);
+
+    // Pit only, turns the robot in place
+    SmartDashboard.putData("Calibrate Camera Extrinsics", apriltag.calibrateExtrinsics());
   }
 
   /**
@@ -75,6 +75,9 @@ public class CustomSwerveInput implements Supplier<ChassisSpeeds> {
   /** Angular velocity axis scalar value, should be between (0, 1] */
   private Optional<Double> omegaAxisScale = Optional.empty();
 
+  /** Robot pose supplier, read once per call to {@link #get} instead of the drive's odometry. */
+  private Optional<Supplier<Pose2d>> poseSupplier = Optional.empty();
+
   /** Target to aim at. */
   private Optional<Pose2d> aimTarget = Optional.empty();
 
@@ -209,6 +212,7 @@ public class CustomSwerveInput implements Supplier<ChassisSpeeds> {
     newStream.controllerHeadingX = controllerHeadingX;
     newStream.controllerHeadingY = controllerHeadingY;
     newStream.headingSupplier = headingSupplier;
+    newStream.poseSupplier = poseSupplier;
     newStream.axisDeadband = axisDeadband;
     newStream.translationAxisScale = translationAxisScale;
     newStream.omegaAxisScale = omegaAxisScale;
@@ -459,6 +463,18 @@ public class CustomSwerveInput implements Supplier<ChassisSpeeds> {
     return this;
   }
 
+  /**
+   * Read the robot pose from a supplier instead of the {@link SwerveDrive}'s odometry, for example
+   * a per-loop cached pose. The supplier is called once per {@link #get}.
+   *
+   * @param pose Supplier that provides the current robot pose
+   * @return self
+   */
+  public CustomSwerveInput withPoseSupplier(Supplier<Pose2d> pose) {
+    poseSupplier = Optional.of(pose);
+    return this;
+  }
+
   /**
    * Set a deadband for all controller axis.
    *
@@ -648,8 +664,9 @@ public class CustomSwerveInput implements Supplier<ChassisSpeeds> {
    * Transition smoothly from one mode to another.
    *
    * @param newMode New mode to transition too.
+   * @param heading Current robot heading.
    */
-  private void transitionMode(SwerveInputMode newMode) {
+  private void transitionMode(SwerveInputMode newMode, Rotation2d heading) {
     // Handle removing of current mode.
     switch (currentMode) {
       case TRANSLATION_ONLY -> {
@@ -665,7 +682,7 @@ public class CustomSwerveInput implements Supplier<ChassisSpeeds> {
     // Transitioning to new mode
     switch (newMode) {
       case TRANSLATION_ONLY -> {
-        lockedHeading = Optional.of(swerveDrive.getOdometryHeading());
+        lockedHeading = Optional.of(heading);
         break;
       }
       case ANGULAR_VELOCITY, DRIVE_TO_POSE -> {
@@ -756,12 +773,13 @@ public class CustomSwerveInput implements Supplier<ChassisSpeeds> {
    *
    * @param fieldRelativeSpeeds Field or robot relative speeds to translate into robot-relative
    *     speeds.
+   * @param heading Current robot heading.
    * @return Field relative {@link ChassisSpeeds}.
    */
-  private ChassisSpeeds applyRobotRelativeTranslation(ChassisSpeeds fieldRelativeSpeeds) {
+  private ChassisSpeeds applyRobotRelativeTranslation(
+      ChassisSpeeds fieldRelativeSpeeds, Rotation2d heading) {
     if (robotRelative.isPresent() && robotRelative.get().getAsBoolean()) {
-      return ChassisSpeeds.fromRobotRelativeSpeeds(
-          fieldRelativeSpeeds, swerveDrive.getOdometryHeading());
+      return ChassisSpeeds.fromRobotRelativeSpeeds(fieldRelativeSpeeds, heading);
     }
     return fieldRelativeSpeeds;
   }
@@ -843,10 +861,14 @@ public class CustomSwerveInput implements Supplier<ChassisSpeeds> {
     double omegaRadiansPerSecond = 0;
     ChassisSpeeds speeds = new ChassisSpeeds();
 
+    // Read the pose once, every mode below works from the same estimate
+    Pose2d pose = poseSupplier.isPresent() ? poseSupplier.get().get() : swerveDrive.getPose();
+    Rotation2d heading = pose.getRotation();
+
     SwerveInputMode newMode = findMode();
     // Handle transitions here.
     if (currentMode != newMode) {
-      transitionMode(newMode);
+      transitionMode(newMode, heading);
     }
     if (swerveController == null) {
       swerveController = swerveDrive.getSwerveController();
@@ -856,7 +878,7 @@ public class CustomSwerveInput implements Supplier<ChassisSpeeds> {
       case TRANSLATION_ONLY -> {
         omegaRadiansPerSecond =
             swerveController.headingCalculate(
-                swerveDrive.getOdometryHeading().getRadians(), lockedHeading.get().getRadians());
+                heading.getRadians(), lockedHeading.get().getRadians());
         speeds = new ChassisSpeeds(vxMetersPerSecond, vyMetersPerSecond, omegaRadiansPerSecond);
         break;
       }
@@ -874,12 +896,12 @@ public class CustomSwerveInput implements Supplier<ChassisSpeeds> {
           Rotation2d targetHeading = applyHeadingOffset(headingSupplier.get().get());
           omegaRadiansPerSecond =
               swerveController.headingCalculate(
-                  swerveDrive.getOdometryHeading().getRadians(), targetHeading.getRadians());
+                  heading.getRadians(), targetHeading.getRadians());
         } else {
           // Use controller joystick inputs
           omegaRadiansPerSecond =
               swerveController.headingCalculate(
-                  swerveDrive.getOdometryHeading().getRadians(),
+                  heading.getRadians(),
                   applyHeadingOffset(
                           applyAllianceAwareRotation(
                               Rotation2d.fromRadians(
@@ -900,19 +922,15 @@ public class CustomSwerveInput implements Supplier<ChassisSpeeds> {
         break;
       }
       case AIM -> {
-        Rotation2d currentHeading = swerveDrive.getOdometryHeading();
-        Translation2d relativeTrl =
-            aimTarget.get().relativeTo(swerveDrive.getPose()).getTranslation();
-        Rotation2d target =
-            new Rotation2d(relativeTrl.getX(), relativeTrl.getY()).plus(currentHeading);
+        Translation2d relativeTrl = aimTarget.get().relativeTo(pose).getTranslation();
+        Rotation2d target = new Rotation2d(relativeTrl.getX(), relativeTrl.getY()).plus(heading);
         omegaRadiansPerSecond =
-            swerveController.headingCalculate(currentHeading.getRadians(), target.getRadians());
+            swerveController.headingCalculate(heading.getRadians(), target.getRadians());
         speeds = new ChassisSpeeds(vxMetersPerSecond, vyMetersPerSecond, omegaRadiansPerSecond);
         break;
       }
       case DRIVE_TO_POSE -> {
         Pose2d target = driveToPose.get().get();
-        Pose2d pose = swerveDrive.getPose();
         omegaRadiansPerSecond =
             driveToPoseOmegaPIDController
                 .get()
@@ -927,7 +945,7 @@ public class CustomSwerveInput implements Supplier<ChassisSpeeds> {
 
     currentMode = newMode;
 
-    return applyRobotRelativeTranslation(speeds);
+    return applyRobotRelativeTranslation(speeds, heading);
   }
 
   /** Drive modes to keep track of. */
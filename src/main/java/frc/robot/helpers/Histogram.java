@@ -0,0 +1,82 @@
+package frc.robot.helpers;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-bucket histogram that one thread records into while another reads it. Recording is a
+ * bucket search and an atomic increment, so it can sit on a hot path. Percentiles are estimated
+ * from the buckets, so they are only as precise as the bucket bounds.
+ */
+public final class Histogram {
+  private final double[] upperBounds;
+
+  /** Count per bucket, the last bucket holds everything above the largest bound. */
+  private final AtomicLongArray counts;
+
+  /**
+   * Creates a histogram.
+   *
+   * @param upperBounds The inclusive upper bound of each bucket, ascending
+   */
+  public Histogram(double... upperBounds) {
+    this.upperBounds = upperBounds.clone();
+    counts = new AtomicLongArray(upperBounds.length + 1);
+  }
+
+  /**
+   * Records a value.
+   *
+   * @param value The value
+   */
+  public void record(double value) {
+    int bucket = 0;
+    while (bucket < upperBounds.length && value > upperBounds[bucket]) {
+      bucket++;
+    }
+    counts.incrementAndGet(bucket);
+  }
+
+  /** @return The number of buckets, including the overflow bucket */
+  public int getBucketCount() {
+    return counts.length();
+  }
+
+  /**
+   * Copies the bucket counts.
+   *
+   * @param out Array of at least {@link #getBucketCount} elements to copy into
+   * @return The total count
+   */
+  public long snapshot(long[] out) {
+    long total = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      out[i] = counts.get(i);
+      total += out[i];
+    }
+    return total;
+  }
+
+  /**
+   * Estimates a percentile from a snapshot as the upper bound of the bucket it falls in.
+   *
+   * @param snapshot Bucket counts from {@link #snapshot}
+   * @param total The total count from {@link #snapshot}
+   * @param percentile The percentile, between 0 and 1
+   * @return The estimate, infinity if it falls in the overflow bucket, or NaN if there are no values
+   */
+  public double getPercentile(long[] snapshot, long total, double percentile) {
+    if (total == 0) {
+      return Double.NaN;
+    }
+
+    long rank = (long) Math.ceil(percentile * total);
+    long seen = 0;
+    for (int i = 0; i < upperBounds.length; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return upperBounds[i];
+      }
+    }
+    return Double.POSITIVE_INFINITY;
+  }
+}
@@ -0,0 +1,218 @@
+package frc.robot.helpers;
+
+import edu.wpi.first.util.datalog.BooleanLogEntry;
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DataLogEntry;
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.util.datalog.IntegerArrayLogEntry;
+import edu.wpi.first.util.datalog.IntegerLogEntry;
+import edu.wpi.first.util.datalog.StructArrayLogEntry;
+import edu.wpi.first.util.datalog.StructLogEntry;
+import edu.wpi.first.util.struct.Struct;
+import edu.wpi.first.wpilibj.DataLogManager;
+import java.lang.reflect.Array;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A namespace of entries in the WPILib data log started by {@link DataLogManager}, which
+ * AdvantageScope opens directly. Appending only copies the value into the log's buffer, and the
+ * log's own background thread writes it to disk, so the robot loop never waits on the drive.
+ * Tables and entries are created on first use and reused after, and arrays logged from the front
+ * of a longer array are copied into a scratch array that is reused while the count stays the same.
+ * Each key must always be written with the same type. Only use from the main robot thread.
+ */
+public final class LogTable {
+  private static LogTable root;
+
+  private final DataLog log;
+  private final String prefix;
+  private final Map<String, LogTable> subtables = new HashMap<>();
+  private final Map<String, DataLogEntry> entries = new HashMap<>();
+  private final Map<String, Object> scratch = new HashMap<>();
+
+  private LogTable(DataLog log, String prefix) {
+    this.log = log;
+    this.prefix = prefix;
+  }
+
+  /**
+   * Gets the root table of the data log, starting the log if it is not running yet.
+   *
+   * @return The root table
+   */
+  public static LogTable getRoot() {
+    if (root == null) {
+      root = new LogTable(DataLogManager.getLog(), "/");
+    }
+    return root;
+  }
+
+  /**
+   * Gets a nested table.
+   *
+   * @param name The name of the table
+   * @return The table
+   */
+  public LogTable getSubtable(String name) {
+    LogTable table = subtables.get(name);
+    if (table == null) {
+      table = new LogTable(log, prefix + name + "/");
+      subtables.put(name, table);
+    }
+    return table;
+  }
+
+  /**
+   * Records a set of inputs into a nested table.
+   *
+   * @param name The name of the nested table
+   * @param records The inputs to record
+   */
+  public void put(String name, LoggableInputs records) {
+    records.toLog(getSubtable(name));
+  }
+
+  /**
+   * Records a value.
+   *
+   * @param name The key within the table
+   * @param value The value
+   */
+  public void put(String name, boolean value) {
+    BooleanLogEntry entry = (BooleanLogEntry) entries.get(name);
+    if (entry == null) {
+      entry = new BooleanLogEntry(log, prefix + name);
+      entries.put(name, entry);
+    }
+    entry.append(value);
+  }
+
+  /**
+   * Records a value.
+   *
+   * @param name The key within the table
+   * @param value The value
+   */
+  public void put(String name, long value) {
+    IntegerLogEntry entry = (IntegerLogEntry) entries.get(name);
+    if (entry == null) {
+      entry = new IntegerLogEntry(log, prefix + name);
+      entries.put(name, entry);
+    }
+    entry.append(value);
+  }
+
+  /**
+   * Records a value.
+   *
+   * @param name The key within the table
+   * @param value The value
+   */
+  public void put(String name, double value) {
+    DoubleLogEntry entry = (DoubleLogEntry) entries.get(name);
+    if (entry == null) {
+      entry = new DoubleLogEntry(log, prefix + name);
+      entries.put(name, entry);
+    }
+    entry.append(value);
+  }
+
+  /**
+   * Records the first values of an array.
+   *
+   * @param name The key within the table
+   * @param values The array
+   * @param count The number of values to record
+   */
+  public void put(String name, double[] values, int count) {
+    DoubleArrayLogEntry entry = (DoubleArrayLogEntry) entries.get(name);
+    if (entry == null) {
+      entry = new DoubleArrayLogEntry(log, prefix + name);
+      entries.put(name, entry);
+    }
+
+    double[] copy = values;
+    if (count != values.length) {
+      copy = (double[]) scratch.get(name);
+      if (copy == null || copy.length != count) {
+        copy = new double[count];
+        scratch.put(name, copy);
+      }
+      System.arraycopy(values, 0, copy, 0, count);
+    }
+    entry.append(copy);
+  }
+
+  /**
+   * Records the first values of an array.
+   *
+   * @param name The key within the table
+   * @param values The array
+   * @param count The number of values to record
+   */
+  public void put(String name, int[] values, int count) {
+    IntegerArrayLogEntry entry = (IntegerArrayLogEntry) entries.get(name);
+    if (entry == null) {
+      entry = new IntegerArrayLogEntry(log, prefix + name);
+      entries.put(name, entry);
+    }
+
+    // The log stores 64-bit integers, so ints are always widened into the scratch array
+    long[] copy = (long[]) scratch.get(name);
+    if (copy == null || copy.length != count) {
+      copy = new long[count];
+      scratch.put(name, copy);
+    }
+    for (int i = 0; i < count; i++) {
+      copy[i] = values[i];
+    }
+    entry.append(copy);
+  }
+
+  /**
+   * Records a value packed with its WPILib struct.
+   *
+   * @param name The key within the table
+   * @param struct The struct describing the value
+   * @param value The value
+   */
+  @SuppressWarnings("unchecked")
+  public <T> void put(String name, Struct<T> struct, T value) {
+    StructLogEntry<T> entry = (StructLogEntry<T>) entries.get(name);
+    if (entry == null) {
+      entry = StructLogEntry.create(log, prefix + name, struct);
+      entries.put(name, entry);
+    }
+    entry.append(value);
+  }
+
+  /**
+   * Records the first values of an array packed with their WPILib struct.
+   *
+   * @param name The key within the table
+   * @param struct The struct describing each value
+   * @param values The array
+   * @param count The number of values to record
+   */
+  @SuppressWarnings("unchecked")
+  public <T> void put(String name, Struct<T> struct, T[] values, int count) {
+    StructArrayLogEntry<T> entry = (StructArrayLogEntry<T>) entries.get(name);
+    if (entry == null) {
+      entry = StructArrayLogEntry.create(log, prefix + name, struct);
+      entries.put(name, entry);
+    }
+
+    T[] copy = values;
+    if (count != values.length) {
+      copy = (T[]) scratch.get(name);
+      if (copy == null || copy.length != count) {
+        copy = (T[]) Array.newInstance(values.getClass().getComponentType(), count);
+        scratch.put(name, copy);
+      }
+      System.arraycopy(values, 0, copy, 0, count);
+    }
+    entry.append(copy);
+  }
+}
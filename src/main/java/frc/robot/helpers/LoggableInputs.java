@@ -0,0 +1,11 @@
+package frc.robot.helpers;
+
+/** Inputs that can record themselves to the robot's data log. */
+public interface LoggableInputs {
+  /**
+   * Writes the current values to a log table. Called on the main robot thread once per loop.
+   *
+   * @param table The table to write to
+   */
+  void toLog(LogTable table);
+}
@@ -0,0 +1,71 @@
+package frc.robot.helpers;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+
+/**
+ * Precomputed Voronoi diagram of a set of POIs over the field. The field is split into a grid of
+ * square cells, and each cell stores the index of the POI closest to its center for each alliance,
+ * so finding the closest POI anywhere on the field is one array read. Near the border between two
+ * POIs the answer can be off by up to half a cell diagonal, callers that care should compare the
+ * real distances to the candidates.
+ */
+public final class NearestPOIMap {
+  private final double cellSize;
+  private final int columns;
+  private final int rows;
+
+  /** Closest POI index per cell for the blue alliance at index 0 and red at index 1. */
+  private final short[][] nearest;
+
+  /**
+   * Builds the map. This runs a nearest-neighbor query for every cell, so build it once at
+   * startup.
+   *
+   * @param index The POIs to map
+   * @param tagId The tag ID to match, from {@link POIIndex#getTagId}
+   * @param cellSize The side length of a cell in meters
+   * @param fieldLength The field length in meters
+   * @param fieldWidth The field width in meters
+   */
+  public NearestPOIMap(
+      POIIndex index, int tagId, double cellSize, double fieldLength, double fieldWidth) {
+    if (index.size() > Short.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many POIs to map");
+    }
+
+    this.cellSize = cellSize;
+    columns = (int) Math.ceil(fieldLength / cellSize);
+    rows = (int) Math.ceil(fieldWidth / cellSize);
+    nearest = new short[2][columns * rows];
+
+    for (Alliance alliance : Alliance.values()) {
+      short[] cells = nearest[allianceIndex(alliance)];
+      for (int column = 0; column < columns; column++) {
+        for (int row = 0; row < rows; row++) {
+          cells[column * rows + row] =
+              (short)
+                  index.nearest(alliance, tagId, (column + 0.5) * cellSize, (row + 0.5) * cellSize);
+        }
+      }
+    }
+  }
+
+  private static int allianceIndex(Alliance alliance) {
+    return alliance == Alliance.Red ? 1 : 0;
+  }
+
+  /**
+   * Looks up the POI closest to a point. Points off the field use the closest cell on it.
+   *
+   * @param alliance The alliance to place the POIs for
+   * @param x The x position in meters
+   * @param y The y position in meters
+   * @return The POI's index in the {@link POIIndex} the map was built from, or -1 if no POI matches
+   */
+  public int lookup(Alliance alliance, double x, double y) {
+    int column = MathUtil.clamp((int) Math.floor(x / cellSize), 0, columns - 1);
+    int row = MathUtil.clamp((int) Math.floor(y / cellSize), 0, rows - 1);
+    return nearest[allianceIndex(alliance)][column * rows + row];
+  }
+}
@@ -0,0 +1,122 @@
+package frc.robot.helpers;
+
+/**
+ * Fixed-capacity ring buffer of timestamped planar poses. Samples are stored in primitive arrays
+ * and looked up with linear interpolation, so recording and querying never allocate.
+ */
+public final class OdometryHistory {
+  private final double[] timestamps;
+  private final double[] xs;
+  private final double[] ys;
+  private final double[] thetas;
+
+  /** Index of the oldest sample. */
+  private int head = 0;
+
+  /** Number of stored samples. */
+  private int size = 0;
+
+  /**
+   * Creates a new odometry history.
+   *
+   * @param capacity The number of samples to keep
+   */
+  public OdometryHistory(int capacity) {
+    timestamps = new double[capacity];
+    xs = new double[capacity];
+    ys = new double[capacity];
+    thetas = new double[capacity];
+  }
+
+  /**
+   * Records a sample. Samples that are not newer than the latest recorded sample are ignored.
+   *
+   * @param timestamp The timestamp in seconds
+   * @param x The x position in meters
+   * @param y The y position in meters
+   * @param theta The heading in radians
+   */
+  public void addSample(double timestamp, double x, double y, double theta) {
+    if (size > 0 && timestamp <= getLatestTimestamp()) {
+      return;
+    }
+
+    int index;
+    if (size < timestamps.length) {
+      index = (head + size) % timestamps.length;
+      size++;
+    } else {
+      index = head;
+      head = (head + 1) % timestamps.length;
+    }
+
+    // Unwrap the heading so interpolation never goes the long way around
+    if (size > 1) {
+      double previous = thetas[(index - 1 + timestamps.length) % timestamps.length];
+      theta = previous + Math.IEEEremainder(theta - previous, 2 * Math.PI);
+    }
+
+    timestamps[index] = timestamp;
+    xs[index] = x;
+    ys[index] = y;
+    thetas[index] = theta;
+  }
+
+  /** Removes all samples. */
+  public void clear() {
+    head = 0;
+    size = 0;
+  }
+
+  /** @return True if no samples have been recorded */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** @return The timestamp of the oldest sample in seconds */
+  public double getOldestTimestamp() {
+    return timestamps[head];
+  }
+
+  /** @return The timestamp of the latest sample in seconds */
+  public double getLatestTimestamp() {
+    return timestamps[(head + size - 1) % timestamps.length];
+  }
+
+  /**
+   * Looks up the pose at a timestamp, interpolating between the surrounding samples. Timestamps
+   * newer than the latest sample return the latest sample.
+   *
+   * @param timestamp The timestamp in seconds
+   * @param out Array of at least three elements that receives x, y and theta
+   * @return False if the timestamp is older than the oldest sample or no samples are recorded
+   */
+  public boolean sample(double timestamp, double[] out) {
+    if (size == 0 || timestamp < getOldestTimestamp()) {
+      return false;
+    }
+
+    // Walk back from the newest sample, lookups are almost always close to now
+    int newer = (head + size - 1) % timestamps.length;
+    if (timestamp >= timestamps[newer]) {
+      out[0] = xs[newer];
+      out[1] = ys[newer];
+      out[2] = thetas[newer];
+      return true;
+    }
+
+    for (int i = size - 2; i >= 0; i--) {
+      int older = (head + i) % timestamps.length;
+      if (timestamps[older] <= timestamp) {
+        double t = (timestamp - timestamps[older]) / (timestamps[newer] - timestamps[older]);
+        out[0] = xs[older] + (xs[newer] - xs[older]) * t;
+        out[1] = ys[older] + (ys[newer] - ys[older]) * t;
+        out[2] = thetas[older] + (thetas[newer] - thetas[older]) * t;
+        return true;
+      }
+      newer = older;
+    }
+
+    return false;
+  }
+}
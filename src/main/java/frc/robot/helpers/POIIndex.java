@@ -0,0 +1,308 @@
+package frc.robot.helpers;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Spatial index over a set of {@link POI}s for nearest-neighbor queries. Tags are interned to
+ * integer IDs once, and every alliance and tag gets its own k-d tree over primitive coordinate
+ * arrays, so a query is a short tree walk with no string compares and no allocation. POIs are
+ * referred to by their position in the array the index was built from.
+ *
+ * <p>Queries share scratch space, so only query from one thread.
+ */
+public final class POIIndex {
+  /** Tag ID that matches every POI. */
+  public static final int ANY_TAG = -1;
+
+  /** Tag ID returned for tags no POI has, matches nothing. */
+  public static final int UNKNOWN_TAG = -2;
+
+  private final POI[] pois;
+  private final Map<String, Integer> tagIds = new HashMap<>();
+
+  /** Pose of every POI for the blue alliance at index 0 and the red alliance at index 1. */
+  private final Pose2d[][] poses;
+
+  /** Tree per alliance, then per tag ID plus one so that {@link #ANY_TAG} is at index 0. */
+  private final KdTree[][] trees;
+
+  private int[] scratchIndices = new int[1];
+  private double[] scratchDistances = new double[1];
+
+  /**
+   * Builds the index.
+   *
+   * @param pois The POIs to index
+   */
+  public POIIndex(POI[] pois) {
+    this.pois = pois.clone();
+
+    int[] poiTags = new int[pois.length];
+    for (int i = 0; i < pois.length; i++) {
+      poiTags[i] = tagIds.computeIfAbsent(pois[i].getTag(), tag -> tagIds.size());
+    }
+
+    poses = new Pose2d[2][pois.length];
+    trees = new KdTree[2][tagIds.size() + 1];
+    for (Alliance alliance : Alliance.values()) {
+      int a = allianceIndex(alliance);
+      for (int i = 0; i < pois.length; i++) {
+        poses[a][i] = pois[i].get(alliance);
+      }
+      for (int tag = ANY_TAG; tag < tagIds.size(); tag++) {
+        trees[a][tag + 1] = new KdTree(poses[a], poiTags, tag);
+      }
+    }
+  }
+
+  private static int allianceIndex(Alliance alliance) {
+    return alliance == Alliance.Red ? 1 : 0;
+  }
+
+  /** @return The number of indexed POIs */
+  public int size() {
+    return pois.length;
+  }
+
+  /**
+   * Gets an indexed POI.
+   *
+   * @param index The position of the POI in the array the index was built from
+   * @return The POI
+   */
+  public POI get(int index) {
+    return pois[index];
+  }
+
+  /**
+   * Gets the pose of an indexed POI without flipping it again.
+   *
+   * @param index The position of the POI in the array the index was built from
+   * @param alliance The alliance to get the pose for
+   * @return The pose
+   */
+  public Pose2d getPose(int index, Alliance alliance) {
+    return poses[allianceIndex(alliance)][index];
+  }
+
+  /**
+   * Looks up the ID of a tag. Look IDs up once and keep them, rather than on every query.
+   *
+   * @param tag The tag, or null for every tag
+   * @return The ID, {@link #ANY_TAG} for null, or {@link #UNKNOWN_TAG} if no POI has the tag
+   */
+  public int getTagId(String tag) {
+    if (tag == null) {
+      return ANY_TAG;
+    }
+    Integer id = tagIds.get(tag);
+    return id == null ? UNKNOWN_TAG : id;
+  }
+
+  private KdTree getTree(Alliance alliance, int tagId) {
+    if (tagId < ANY_TAG || tagId >= tagIds.size()) {
+      return null;
+    }
+    return trees[allianceIndex(alliance)][tagId + 1];
+  }
+
+  /**
+   * Finds the POI closest to a point.
+   *
+   * @param alliance The alliance to place the POIs for
+   * @param tagId The tag ID to match
+   * @param x The x position in meters
+   * @param y The y position in meters
+   * @return The POI's index, or -1 if no POI matches
+   */
+  public int nearest(Alliance alliance, int tagId, double x, double y) {
+    return nearest(alliance, tagId, x, y, 1, scratchIndices) > 0 ? scratchIndices[0] : -1;
+  }
+
+  /**
+   * Finds the POIs closest to a point.
+   *
+   * @param alliance The alliance to place the POIs for
+   * @param tagId The tag ID to match
+   * @param x The x position in meters
+   * @param y The y position in meters
+   * @param k The number of POIs to find
+   * @param out Array of at least k elements that receives the POI indices, closest first
+   * @return The number of POIs found, less than k if fewer match
+   */
+  public int nearest(Alliance alliance, int tagId, double x, double y, int k, int[] out) {
+    KdTree tree = getTree(alliance, tagId);
+    if (tree == null || k <= 0) {
+      return 0;
+    }
+    if (scratchDistances.length < k) {
+      scratchDistances = new double[k];
+    }
+    return tree.nearest(0, tree.size(), true, x, y, k, out, scratchDistances, 0);
+  }
+
+  /**
+   * Finds the POIs within a radius of a point.
+   *
+   * @param alliance The alliance to place the POIs for
+   * @param tagId The tag ID to match
+   * @param x The x position in meters
+   * @param y The y position in meters
+   * @param radius The radius in meters
+   * @param out Array that receives the POI indices, in no particular order
+   * @return The number of POIs found, at most the length of out
+   */
+  public int withinRadius(
+      Alliance alliance, int tagId, double x, double y, double radius, int[] out) {
+    KdTree tree = getTree(alliance, tagId);
+    if (tree == null) {
+      return 0;
+    }
+    return tree.withinRadius(0, tree.size(), true, x, y, radius * radius, out, 0);
+  }
+
+  /**
+   * Balanced k-d tree stored implicitly in arrays. The node of a range is its middle element, with
+   * the elements before it on the low side of its split and the ones after it on the high side.
+   * Splits alternate between x and y with depth, starting with x.
+   */
+  private static final class KdTree {
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] ids;
+
+    KdTree(Pose2d[] poses, int[] tags, int tag) {
+      int count = 0;
+      for (int i = 0; i < poses.length; i++) {
+        if (tag == ANY_TAG || tags[i] == tag) {
+          count++;
+        }
+      }
+
+      xs = new double[count];
+      ys = new double[count];
+      ids = new int[count];
+      Integer[] order = new Integer[count];
+      count = 0;
+      for (int i = 0; i < poses.length; i++) {
+        if (tag == ANY_TAG || tags[i] == tag) {
+          order[count++] = i;
+        }
+      }
+
+      build(poses, order, 0, count, true);
+      for (int i = 0; i < count; i++) {
+        xs[i] = poses[order[i]].getX();
+        ys[i] = poses[order[i]].getY();
+        ids[i] = order[i];
+      }
+    }
+
+    /** Orders a range so its middle element splits it, then does the same for both halves. */
+    private static void build(Pose2d[] poses, Integer[] order, int lo, int hi, boolean splitX) {
+      if (hi - lo < 2) {
+        return;
+      }
+      Arrays.sort(
+          order,
+          lo,
+          hi,
+          (a, b) ->
+              splitX
+                  ? Double.compare(poses[a].getX(), poses[b].getX())
+                  : Double.compare(poses[a].getY(), poses[b].getY()));
+      int mid = (lo + hi) >>> 1;
+      build(poses, order, lo, mid, !splitX);
+      build(poses, order, mid + 1, hi, !splitX);
+    }
+
+    int size() {
+      return ids.length;
+    }
+
+    /**
+     * Collects the k closest elements of a range into a list sorted by distance.
+     *
+     * @return The new length of the list
+     */
+    int nearest(
+        int lo,
+        int hi,
+        boolean splitX,
+        double x,
+        double y,
+        int k,
+        int[] out,
+        double[] distancesSq,
+        int count) {
+      if (lo >= hi) {
+        return count;
+      }
+
+      int mid = (lo + hi) >>> 1;
+      double dx = x - xs[mid];
+      double dy = y - ys[mid];
+      double distanceSq = dx * dx + dy * dy;
+
+      if (count < k || distanceSq < distancesSq[count - 1]) {
+        int position = Math.min(count, k - 1);
+        while (position > 0 && distancesSq[position - 1] > distanceSq) {
+          out[position] = out[position - 1];
+          distancesSq[position] = distancesSq[position - 1];
+          position--;
+        }
+        out[position] = ids[mid];
+        distancesSq[position] = distanceSq;
+        count = Math.min(count + 1, k);
+      }
+
+      // Search the side of the split the point is on first, the other side only if it can hold
+      // something closer than the current k-th closest
+      double split = splitX ? dx : dy;
+      if (split < 0) {
+        count = nearest(lo, mid, !splitX, x, y, k, out, distancesSq, count);
+        if (count < k || split * split < distancesSq[count - 1]) {
+          count = nearest(mid + 1, hi, !splitX, x, y, k, out, distancesSq, count);
+        }
+      } else {
+        count = nearest(mid + 1, hi, !splitX, x, y, k, out, distancesSq, count);
+        if (count < k || split * split < distancesSq[count - 1]) {
+          count = nearest(lo, mid, !splitX, x, y, k, out, distancesSq, count);
+        }
+      }
+      return count;
+    }
+
+    /**
+     * Collects the elements of a range within a radius.
+     *
+     * @return The new number of collected elements
+     */
+    int withinRadius(
+        int lo, int hi, boolean splitX, double x, double y, double radiusSq, int[] out, int count) {
+      if (lo >= hi || count >= out.length) {
+        return count;
+      }
+
+      int mid = (lo + hi) >>> 1;
+      double dx = x - xs[mid];
+      double dy = y - ys[mid];
+      if (dx * dx + dy * dy <= radiusSq) {
+        out[count++] = ids[mid];
+      }
+
+      double split = splitX ? dx : dy;
+      if (split < 0 || split * split <= radiusSq) {
+        count = withinRadius(lo, mid, !splitX, x, y, radiusSq, out, count);
+      }
+      if (split >= 0 || split * split <= radiusSq) {
+        count = withinRadius(mid + 1, hi, !splitX, x, y, radiusSq, out, count);
+      }
+      return count;
+    }
+  }
+}
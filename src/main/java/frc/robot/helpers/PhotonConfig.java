@@ -12,4 +12,7 @@ public final record PhotonConfig(
     Transform3d transform,
 
     /** Strategy of the camera. */
-    PoseStrategy strategy) {}
+    PoseStrategy strategy,
+
+    /** Calibration factor applied to this camera's standard deviations, 1 for nominal. */
+    double stdDevFactor) {}
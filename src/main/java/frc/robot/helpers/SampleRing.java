@@ -0,0 +1,81 @@
+package frc.robot.helpers;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free ring buffer of timestamped samples with a fixed number of values each, written by one
+ * thread and read by any number of others. Samples are numbered from zero in the order they are
+ * written, readers keep their own cursor and copy out every sample they have not seen yet. The
+ * writer never waits, so a reader that falls more than a full ring behind loses the oldest samples.
+ */
+public final class SampleRing {
+  private final int capacity;
+  private final int stride;
+  private final double[] data;
+
+  /** Number of samples written, published after each sample is complete. */
+  private final AtomicLong written = new AtomicLong();
+
+  /**
+   * Creates a new sample ring.
+   *
+   * @param capacity The number of samples to keep
+   * @param width The number of values in each sample, not counting the timestamp
+   */
+  public SampleRing(int capacity, int width) {
+    this.capacity = capacity;
+    stride = width + 1;
+    data = new double[capacity * stride];
+  }
+
+  /** @return The number of values in each sample, not counting the timestamp */
+  public int getWidth() {
+    return stride - 1;
+  }
+
+  /**
+   * Writes a sample. Only call from the writer thread.
+   *
+   * @param timestamp The timestamp in seconds
+   * @param values Array of at least {@link #getWidth} values
+   */
+  public void add(double timestamp, double[] values) {
+    long count = written.get();
+    int base = (int) (count % capacity) * stride;
+    data[base] = timestamp;
+    System.arraycopy(values, 0, data, base + 1, stride - 1);
+    written.set(count + 1);
+  }
+
+  /** @return The number of samples written since creation */
+  public long getWrittenCount() {
+    return written.get();
+  }
+
+  /** @return The number of the oldest sample that has not been overwritten yet */
+  public long getOldestIndex() {
+    return Math.max(0, written.get() - capacity + 1);
+  }
+
+  /**
+   * Copies a sample out of the ring.
+   *
+   * @param index The number of the sample, below {@link #getWrittenCount}
+   * @param out Array of at least {@link #getWidth} plus one elements that receives the timestamp
+   *     followed by the values
+   * @return False if the sample was not written yet or has already been overwritten
+   */
+  public boolean get(long index, double[] out) {
+    if (index < 0 || index >= written.get()) {
+      return false;
+    }
+
+    System.arraycopy(data, (int) (index % capacity) * stride, out, 0, stride);
+
+    // The writer may have lapped the reader during the copy, the slot of the sample being written
+    // holds the sample one full ring older
+    VarHandle.loadLoadFence();
+    return index > written.get() - capacity;
+  }
+}
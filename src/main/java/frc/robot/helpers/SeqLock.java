@@ -0,0 +1,66 @@
+package frc.robot.helpers;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sequence lock over a fixed number of values, for state that one thread updates at a high rate
+ * and others read as a consistent set. Writers never wait on readers. Readers never block the
+ * writer, they copy the values and retry if a write happened during the copy, which is rare when
+ * writes are short and far apart.
+ *
+ * <p>Writes must not overlap, callers with more than one writer have to serialize them.
+ */
+public final class SeqLock {
+  private final double[] values;
+
+  /** Odd while a write is in progress, incremented before and after every write. */
+  private final AtomicLong sequence = new AtomicLong();
+
+  /**
+   * Creates a new sequence lock with every value zero.
+   *
+   * @param size The number of values
+   */
+  public SeqLock(int size) {
+    values = new double[size];
+  }
+
+  /** @return The number of values */
+  public int size() {
+    return values.length;
+  }
+
+  /**
+   * Replaces the values.
+   *
+   * @param source Array of at least {@link #size} values
+   */
+  public void write(double[] source) {
+    long start = sequence.get();
+    sequence.set(start + 1);
+    VarHandle.storeStoreFence();
+    System.arraycopy(source, 0, values, 0, values.length);
+    sequence.set(start + 2);
+  }
+
+  /**
+   * Copies a consistent set of values.
+   *
+   * @param out Array of at least {@link #size} elements that receives the values
+   * @return The number of writes so far, which can be compared against a previous read
+   */
+  public long read(double[] out) {
+    while (true) {
+      long before = sequence.get();
+      if ((before & 1) == 0) {
+        System.arraycopy(values, 0, out, 0, values.length);
+        VarHandle.loadLoadFence();
+        if (sequence.get() == before) {
+          return before >> 1;
+        }
+      }
+      Thread.onSpinWait();
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package frc.robot.helpers;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Pose3d;
+
+/**
+ * Dense lookup table of apriltag field poses indexed by fiducial ID. Built once from an {@link
+ * AprilTagFieldLayout} so the vision hot path avoids the list scan and {@code Optional} of {@link
+ * AprilTagFieldLayout#getTagPose(int)}. Coordinates are also kept in primitive arrays for distance
+ * math.
+ */
+public final class TagPoseTable {
+  private final Pose3d[] poses;
+  private final double[] x;
+  private final double[] y;
+
+  /**
+   * Creates a new table from a field layout.
+   *
+   * @param layout The field layout to read tag poses from
+   */
+  public TagPoseTable(AprilTagFieldLayout layout) {
+    int maxId = -1;
+    for (AprilTag tag : layout.getTags()) {
+      maxId = Math.max(maxId, tag.ID);
+    }
+
+    poses = new Pose3d[maxId + 1];
+    x = new double[maxId + 1];
+    y = new double[maxId + 1];
+
+    for (AprilTag tag : layout.getTags()) {
+      if (tag.ID < 0) {
+        continue;
+      }
+      poses[tag.ID] = tag.pose;
+      x[tag.ID] = tag.pose.getX();
+      y[tag.ID] = tag.pose.getY();
+    }
+  }
+
+  /**
+   * Checks whether a tag is part of the field layout.
+   *
+   * @param id The fiducial ID
+   * @return True if the tag has a known pose
+   */
+  public boolean contains(int id) {
+    return id >= 0 && id < poses.length && poses[id] != null;
+  }
+
+  /**
+   * Gets the field pose of a tag.
+   *
+   * @param id The fiducial ID
+   * @return The pose of the tag, or null if the tag is not in the layout
+   */
+  public Pose3d getPose(int id) {
+    return contains(id) ? poses[id] : null;
+  }
+
+  /**
+   * Gets the planar distance from a field position to a tag.
+   *
+   * @param id The fiducial ID of a tag in the layout
+   * @param fieldX The field x coordinate in meters
+   * @param fieldY The field y coordinate in meters
+   * @return The distance in meters
+   */
+  public double getDistance2d(int id, double fieldX, double fieldY) {
+    double dx = x[id] - fieldX;
+    double dy = y[id] - fieldY;
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+  /** @return One more than the largest fiducial ID in the layout */
+  public int size() {
+    return poses.length;
+  }
+}
@@ -0,0 +1,80 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+/**
+ * The drive's pose and velocity as of the start of the current robot loop. {@link Swerve} reads
+ * the odometry thread once per scheduler tick and every consumer on the main thread shares the
+ * result, so they all see the same state and none of them allocate for it. The primitive accessors
+ * never allocate, the object accessors build their object once per tick on first use.
+ *
+ * <p>Only read from the main robot thread, other threads should use {@link
+ * OdometryThread#getLatest}. The returned speeds are shared, so do not modify them.
+ */
+public final class DriveState {
+  private final double[] values = new double[7];
+
+  private Pose2d pose;
+  private ChassisSpeeds robotVelocity;
+
+  DriveState() {}
+
+  /**
+   * Replaces the state with the odometry thread's latest update.
+   *
+   * @param odometry The odometry thread
+   */
+  void update(OdometryThread odometry) {
+    odometry.getLatest(values);
+    pose = null;
+    robotVelocity = null;
+  }
+
+  /** @return The robot x position in meters */
+  public double getX() {
+    return values[OdometryThread.X];
+  }
+
+  /** @return The robot y position in meters */
+  public double getY() {
+    return values[OdometryThread.Y];
+  }
+
+  /** @return The robot heading in radians */
+  public double getTheta() {
+    return values[OdometryThread.THETA];
+  }
+
+  /** @return The robot relative x velocity in meters per second */
+  public double getVx() {
+    return values[OdometryThread.VX];
+  }
+
+  /** @return The robot relative y velocity in meters per second */
+  public double getVy() {
+    return values[OdometryThread.VY];
+  }
+
+  /** @return The angular velocity in radians per second */
+  public double getOmega() {
+    return values[OdometryThread.OMEGA];
+  }
+
+  /** @return The robot pose on the field */
+  public Pose2d getPose() {
+    if (pose == null) {
+      pose = new Pose2d(getX(), getY(), new Rotation2d(getTheta()));
+    }
+    return pose;
+  }
+
+  /** @return The robot relative velocity */
+  public ChassisSpeeds getRobotVelocity() {
+    if (robotVelocity == null) {
+      robotVelocity = new ChassisSpeeds(getVx(), getVy(), getOmega());
+    }
+    return robotVelocity;
+  }
+}
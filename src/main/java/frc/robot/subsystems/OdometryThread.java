@@ -0,0 +1,186 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.RobotConstants;
+import frc.robot.helpers.SampleRing;
+import frc.robot.helpers.SeqLock;
+import swervelib.SwerveDrive;
+import swervelib.telemetry.SwerveDriveTelemetry;
+
+/**
+ * Runs swerve odometry on its own thread at a higher rate than the robot loop. Each update is
+ * written as a timestamped sample of the wheel odometry pose and module positions into a {@link
+ * SampleRing}, and the latest estimated pose and velocity into a {@link SeqLock}, so control code
+ * on any thread reads a consistent pose without taking the drive's odometry lock.
+ *
+ * <p>The wheel odometry pose comes from the gyro and module positions alone. Vision never moves it,
+ * so vision can be checked against it without checking against its own earlier corrections. It
+ * only jumps when the pose is reset, and each reset is counted in the samples.
+ *
+ * <p>On the robot this thread replaces YAGSL's odometry notifier. In simulation YAGSL's notifier
+ * keeps running because it also steps the drivetrain simulation, and this thread only samples it.
+ */
+public final class OdometryThread {
+  /** Index of the wheel odometry x position in meters in samples. */
+  public static final int WHEEL_X = 0;
+
+  /** Index of the wheel odometry y position in meters in samples. */
+  public static final int WHEEL_Y = 1;
+
+  /** Index of the wheel odometry heading in radians in samples. */
+  public static final int WHEEL_THETA = 2;
+
+  /** Index of the number of pose resets so far in samples. */
+  public static final int RESETS = 3;
+
+  /** Index of the first module's drive distance in meters in samples. */
+  public static final int FIRST_MODULE = 4;
+
+  /** Index of the estimated x position in meters in the latest state. */
+  public static final int X = 0;
+
+  /** Index of the estimated y position in meters in the latest state. */
+  public static final int Y = 1;
+
+  /** Index of the estimated heading in radians in the latest state. */
+  public static final int THETA = 2;
+
+  /** Index of the robot relative x velocity in meters per second in the latest state. */
+  public static final int VX = 3;
+
+  /** Index of the robot relative y velocity in meters per second in the latest state. */
+  public static final int VY = 4;
+
+  /** Index of the angular velocity in radians per second in the latest state. */
+  public static final int OMEGA = 5;
+
+  /** Index of the sample timestamp in seconds in the latest state. */
+  public static final int TIMESTAMP = 6;
+
+  private final SwerveDrive drive;
+  private final boolean ownsOdometry;
+  private final Notifier notifier;
+
+  private final SampleRing samples;
+  private final SeqLock latest = new SeqLock(7);
+
+  // Only touched while holding this object's lock
+  private final SwerveDriveOdometry wheelOdometry;
+  private int resetCount = 0;
+  private final double[] sampleValues;
+  private final double[] latestValues = new double[7];
+
+  /**
+   * Creates the odometry thread and starts it.
+   *
+   * @param drive The drive to run odometry for
+   */
+  public OdometryThread(SwerveDrive drive) {
+    this.drive = drive;
+    ownsOdometry = !SwerveDriveTelemetry.isSimulation;
+
+    wheelOdometry =
+        new SwerveDriveOdometry(
+            drive.kinematics, drive.getYaw(), drive.getModulePositions(), drive.getPose());
+
+    // Pose and reset count, then the distance and angle of every module
+    int moduleCount = drive.getModules().length;
+    sampleValues = new double[FIRST_MODULE + moduleCount * 2];
+    samples = new SampleRing(RobotConstants.ODOMETRY_BUFFER_SIZE, sampleValues.length);
+
+    sample();
+
+    if (ownsOdometry) {
+      drive.stopOdometryThread();
+    }
+    notifier = new Notifier(this::update);
+    notifier.setName("Odometry");
+    notifier.startPeriodic(RobotConstants.ODOMETRY_PERIOD);
+  }
+
+  private void update() {
+    if (ownsOdometry) {
+      drive.updateOdometry();
+    }
+    sample();
+  }
+
+  /**
+   * Resets the wheel odometry to the pose the drive was just reset to, counts the reset and records
+   * it. Call from the main thread right after resetting the drive's pose, so readers never see the
+   * pose from before the reset.
+   *
+   * @param pose The pose the drive was reset to
+   */
+  synchronized void reset(Pose2d pose) {
+    resetCount++;
+    seed(pose);
+  }
+
+  /**
+   * Moves the wheel odometry to the pose the drive was just seeded with and records it, without
+   * counting a reset. Use for the placeholder pose held until vision first localizes, which is
+   * re-seeded every loop and has no vision fix for a reset to invalidate.
+   *
+   * @param pose The pose the drive was seeded with
+   */
+  synchronized void seed(Pose2d pose) {
+    wheelOdometry.resetPosition(drive.getYaw(), drive.getModulePositions(), pose);
+    sample();
+  }
+
+  /** Records the drive's current odometry. */
+  private synchronized void sample() {
+    double timestamp = Timer.getFPGATimestamp();
+    Pose2d pose = drive.getPose();
+    ChassisSpeeds speeds = drive.getRobotVelocity();
+    SwerveModulePosition[] modules = drive.getModulePositions();
+    Pose2d wheelPose = wheelOdometry.update(drive.getYaw(), modules);
+
+    sampleValues[WHEEL_X] = wheelPose.getX();
+    sampleValues[WHEEL_Y] = wheelPose.getY();
+    sampleValues[WHEEL_THETA] = wheelPose.getRotation().getRadians();
+    sampleValues[RESETS] = resetCount;
+    for (int i = 0; i < modules.length; i++) {
+      sampleValues[FIRST_MODULE + i * 2] = modules[i].distanceMeters;
+      sampleValues[FIRST_MODULE + i * 2 + 1] = modules[i].angle.getRadians();
+    }
+    samples.add(timestamp, sampleValues);
+
+    latestValues[X] = pose.getX();
+    latestValues[Y] = pose.getY();
+    latestValues[THETA] = pose.getRotation().getRadians();
+    latestValues[VX] = speeds.vxMetersPerSecond;
+    latestValues[VY] = speeds.vyMetersPerSecond;
+    latestValues[OMEGA] = speeds.omegaRadiansPerSecond;
+    latestValues[TIMESTAMP] = timestamp;
+    latest.write(latestValues);
+  }
+
+  /**
+   * Gets the timestamped odometry samples. Each sample holds the wheel odometry pose at {@link
+   * #WHEEL_X}, {@link #WHEEL_Y} and {@link #WHEEL_THETA}, the number of resets so far at {@link
+   * #RESETS}, then the drive distance and angle of every module from {@link #FIRST_MODULE}.
+   *
+   * @return The sample ring
+   */
+  public SampleRing getSamples() {
+    return samples;
+  }
+
+  /**
+   * Copies the latest odometry state, the estimated pose at {@link #X}, {@link #Y} and {@link
+   * #THETA}, the robot relative velocity at {@link #VX}, {@link #VY} and {@link #OMEGA}, and the
+   * time it was sampled at {@link #TIMESTAMP}. Safe to call from any thread.
+   *
+   * @param out Array of at least seven elements that receives the state
+   */
+  public void getLatest(double[] out) {
+    latest.read(out);
+  }
+}
@@ -22,12 +22,18 @@ import edu.wpi.first.wpilibj.Filesystem;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.FieldConstants;
 import frc.robot.Constants.RobotConstants;
 import frc.robot.Robot;
+import frc.robot.helpers.LogTable;
+import frc.robot.helpers.NearestPOIMap;
 import frc.robot.helpers.POI;
+import frc.robot.helpers.POIIndex;
 import frc.robot.subsystems.vision.Vision;
 
 import java.io.File;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.function.Supplier;
 import swervelib.SwerveDrive;
 import swervelib.parser.SwerveParser;
@@ -54,11 +60,17 @@ import swervelib.telemetry.SwerveDriveTelemetry.TelemetryVerbosity;
 public class Swerve extends SubsystemBase {
   private static Swerve instance;
   private SwerveDrive drivebase;
+  private OdometryThread odometry;
+  private final DriveState state = new DriveState();
+
+  private final Map<POI[], POIIndex> poiIndices = new IdentityHashMap<>();
 
   private PIDController thetaPID;
   private PIDController translationXPID;
   private PIDController translationYPID;
 
+  private final LogTable logTable = LogTable.getRoot().getSubtable("Swerve");
+
   /**
    * Returns the singleton instance of the Swerve subsystem. Creates a new instance if one does not
    * exist.
@@ -86,8 +98,7 @@ public class Swerve extends SubsystemBase {
           new SwerveParser(new File(Filesystem.getDeployDirectory(), "swerve"))
               .createSwerveDrive(
                   RobotConstants.MAX_SPEED.in(MetersPerSecond),
-                  new Pose2d(
-                      new Translation2d(Meter.of(8.774), Meter.of(4.026)), getAllianceRotation()));
+                  getFieldCenterPose());
     } catch (Exception e) {
       throw new RuntimeException("Failed to create swerve drive", e);
     }
@@ -98,6 +109,8 @@ public class Swerve extends SubsystemBase {
     drivebase.setModuleEncoderAutoSynchronize(true, 1);
     drivebase.setChassisDiscretization(true, true, 0.02);
     drivebase.useExternalFeedbackSensor();
+    odometry = new OdometryThread(drivebase);
+    state.update(odometry);
 
     thetaPID = new PIDController(1.0, 0.0, 0.0);
     translationXPID = new PIDController(7.5, 0.0, 0.0015);
@@ -120,6 +133,11 @@ public class Swerve extends SubsystemBase {
     return Rotation2d.fromDegrees(0);
   }
 
+  /** @return The center of the field, facing away from the alliance's driver station */
+  private Pose2d getFieldCenterPose() {
+    return new Pose2d(new Translation2d(Meter.of(8.774), Meter.of(4.026)), getAllianceRotation());
+  }
+
   /**
    * Configures PathPlanner for autonomous path following. Sets up the necessary callbacks and
    * controllers for autonomous navigation, including pose estimation, odometry reset, and velocity
@@ -208,12 +226,12 @@ public class Swerve extends SubsystemBase {
    * }</pre>
    */
   public void resetOdometry() {
-    drivebase.resetOdometry(
-        new Pose2d(new Translation2d(Meter.of(8.774), Meter.of(4.026)), getAllianceRotation()));
+    resetOdometry(getFieldCenterPose());
   }
 
   /**
-   * Retrieves the current estimated pose of the robot on the field.
+   * Retrieves the current estimated pose of the robot on the field, as of the start of this loop.
+   * Only call from the main robot thread.
    *
    * <p>Example:
    *
@@ -224,7 +242,7 @@ public class Swerve extends SubsystemBase {
    * @return the current Pose2d representing the robot's position and rotation
    */
   public Pose2d getPose() {
-    return drivebase.getPose();
+    return state.getPose();
   }
 
   /**
@@ -240,10 +258,25 @@ public class Swerve extends SubsystemBase {
    */
   public void resetOdometry(Pose2d pose) {
     drivebase.resetOdometry(pose);
+    odometry.reset(pose);
+    state.update(odometry);
   }
 
   /**
-   * Gets the current velocity of the robot.
+   * Holds the pose at the center of the field until vision localizes. Unlike {@link
+   * #resetOdometry()} this is not counted as a reset, so vision keeps the observations it captured
+   * before the re-seed.
+   */
+  private void seedOdometry() {
+    Pose2d pose = getFieldCenterPose();
+    drivebase.resetOdometry(pose);
+    odometry.seed(pose);
+    state.update(odometry);
+  }
+
+  /**
+   * Gets the current robot relative velocity of the robot, as of the start of this loop. Only call
+   * from the main robot thread.
    *
    * <p>Example:
    *
@@ -254,7 +287,32 @@ public class Swerve extends SubsystemBase {
    * @return the ChassisSpeeds representing the robot's current velocity
    */
   public ChassisSpeeds getRobotVelocity() {
-    return drivebase.getRobotVelocity();
+    return state.getRobotVelocity();
+  }
+
+  /**
+   * Gets the drive's pose and velocity as of the start of this loop, with primitive accessors that
+   * never allocate. Only call from the main robot thread.
+   *
+   * <p>Example:
+   *
+   * <pre>{@code
+   * DriveState state = Swerve.getInstance().getState();
+   * double distance = Math.hypot(targetX - state.getX(), targetY - state.getY());
+   * }</pre>
+   *
+   * @return The shared drive state
+   */
+  public DriveState getState() {
+    return state;
+  }
+
+  /**
+   * Reads the odometry thread's latest update into the shared drive state. Called once per loop
+   * before the command scheduler runs.
+   */
+  public void updateState() {
+    state.update(odometry);
   }
 
   /**
@@ -272,6 +330,16 @@ public class Swerve extends SubsystemBase {
     return drivebase;
   }
 
+  /**
+   * Gets the thread that runs the drive's odometry, for reading every odometry sample rather than
+   * only the latest pose.
+   *
+   * @return The odometry thread
+   */
+  public OdometryThread getOdometry() {
+    return odometry;
+  }
+
   /**
    * Creates a command to autonomously drive the robot to a specific pose using PathPlanner.
    *
@@ -336,14 +404,15 @@ public class Swerve extends SubsystemBase {
       return null;
     }
 
-    Pose2d currentPose = getPose();
+    final double robotX = state.getX();
+    final double robotY = state.getY();
     double minDistSq = Double.MAX_VALUE;
     Pose2d closest = null;
 
     for (Pose2d point : points) {
       // Calculate squared distance to avoid square root operation
-      double dx = currentPose.getX() - point.getX();
-      double dy = currentPose.getY() - point.getY();
+      double dx = robotX - point.getX();
+      double dy = robotY - point.getY();
       double distSq = dx * dx + dy * dy;
 
       if (distSq < minDistSq) {
@@ -355,6 +424,17 @@ public class Swerve extends SubsystemBase {
     return closest;
   }
 
+  /**
+   * Gets the spatial index of a POI array, building it the first time the array is seen. POI
+   * arrays are constants, so each is indexed once.
+   *
+   * @param points Array of POI objects to index
+   * @return The index, with POIs referred to by their position in the array
+   */
+  public POIIndex getPOIIndex(POI[] points) {
+    return poiIndices.computeIfAbsent(points, POIIndex::new);
+  }
+
   /**
    * Finds the closest point from an array of field POIs to the robot's current position. Takes
    * alliance into account and optimizes calculations for frequent calls.
@@ -363,34 +443,7 @@ public class Swerve extends SubsystemBase {
    * @return The Pose2d of the closest POI, or null if the array is empty
    */
   public Pose2d getClosestPOI(POI[] points) {
-    if (points == null || points.length == 0) {
-      return null;
-    }
-
-    var alliance = DriverStation.getAlliance().orElse(Alliance.Blue);
-    Pose2d currentPose = getPose();
-    double minDistSq = Double.MAX_VALUE;
-    int closestIndex = -1;
-
-    // Cache current position for optimization
-    final double robotX = currentPose.getX();
-    final double robotY = currentPose.getY();
-
-    for (int i = 0; i < points.length; i++) {
-      Pose2d pointPose = points[i].get(alliance);
-
-      // Calculate squared distance to avoid square root operation
-      double dx = robotX - pointPose.getX();
-      double dy = robotY - pointPose.getY();
-      double distSq = dx * dx + dy * dy;
-
-      if (distSq < minDistSq) {
-        minDistSq = distSq;
-        closestIndex = i;
-      }
-    }
-
-    return closestIndex >= 0 ? points[closestIndex].get(alliance) : null;
+    return getClosestPOIByTag(points, null);
   }
 
   /**
@@ -406,53 +459,82 @@ public class Swerve extends SubsystemBase {
       return null;
     }
 
-    var alliance = DriverStation.getAlliance().orElse(Alliance.Blue);
-    Pose2d currentPose = getPose();
-    double minDistSq = Double.MAX_VALUE;
-    int closestIndex = -1;
-
-    // Cache current position for optimization
-    final double robotX = currentPose.getX();
-    final double robotY = currentPose.getY();
-
-    for (int i = 0; i < points.length; i++) {
-      // Skip POIs that don't match the requested tag
-      if (tag != null && !points[i].getTag().equals(tag)) {
-        continue;
-      }
-
-      Pose2d pointPose = points[i].get(alliance);
-
-      // Calculate squared distance to avoid square root operation
-      double dx = robotX - pointPose.getX();
-      double dy = robotY - pointPose.getY();
-      double distSq = dx * dx + dy * dy;
-
-      if (distSq < minDistSq) {
-        minDistSq = distSq;
-        closestIndex = i;
-      }
-    }
+    POIIndex index = getPOIIndex(points);
+    return getClosestPOI(index, index.getTagId(tag));
+  }
 
-    return closestIndex >= 0 ? points[closestIndex].get(alliance) : null;
+  /**
+   * Finds the closest POI with a tag ID to the robot's current position.
+   *
+   * @param index The POI index to search
+   * @param tagId The tag ID from {@link POIIndex#getTagId}
+   * @return The Pose2d of the closest matching POI, or null if none found
+   */
+  private Pose2d getClosestPOI(POIIndex index, int tagId) {
+    var alliance = DriverStation.getAlliance().orElse(Alliance.Blue);
+    int closest = index.nearest(alliance, tagId, state.getX(), state.getY());
+    return closest >= 0 ? index.getPose(closest, alliance) : null;
   }
 
   /**
    * Creates a supplier that returns a Rotation2d pointing toward the closest POI with a specific
-   * tag.
+   * tag. The closest POI comes from a precomputed map of the field, so each call is an array read.
+   * The supplier only switches to a new POI once the robot is clearly closer to it, so the heading
+   * does not flicker when the robot sits between two POIs.
    *
    * @param points Array of POIs to target
    * @param tag The tag to filter by, or null to consider all POIs
    * @return A supplier that provides the rotation toward the closest matching POI when called
    */
   public Supplier<Rotation2d> createPointToClosestSupplier(POI[] points, String tag) {
-    return () -> {
-      Pose2d closestPose = getClosestPOIByTag(points, tag);
-      if (closestPose == null) {
-        return new Rotation2d(); // Default to 0 if no points available
+    POIIndex index = getPOIIndex(points == null ? new POI[0] : points);
+    return new ClosestHeadingSupplier(index, index.getTagId(tag));
+  }
+
+  /** Heading toward the closest POI, with hysteresis between neighboring POIs. */
+  private final class ClosestHeadingSupplier implements Supplier<Rotation2d> {
+    private final POIIndex index;
+    private final NearestPOIMap map;
+    private Alliance currentAlliance;
+    private int current = -1;
+
+    ClosestHeadingSupplier(POIIndex index, int tagId) {
+      this.index = index;
+      map =
+          new NearestPOIMap(
+              index,
+              tagId,
+              FieldConstants.POI_MAP_CELL_SIZE,
+              FieldConstants.FIELD_LENGTH_METERS,
+              FieldConstants.FIELD_WIDTH_METERS);
+    }
+
+    @Override
+    public Rotation2d get() {
+      var alliance = DriverStation.getAlliance().orElse(Alliance.Blue);
+      double x = state.getX();
+      double y = state.getY();
+
+      int candidate = map.lookup(alliance, x, y);
+      if (candidate < 0) {
+        return Rotation2d.kZero; // Default to 0 if no points available
+      }
+
+      if (current < 0 || alliance != currentAlliance) {
+        current = candidate;
+        currentAlliance = alliance;
+      } else if (candidate != current
+          && getDistance(current, alliance, x, y) - getDistance(candidate, alliance, x, y)
+              > FieldConstants.POI_HEADING_HYSTERESIS) {
+        current = candidate;
       }
-      return closestPose.getRotation();
-    };
+      return index.getPose(current, alliance).getRotation();
+    }
+
+    private double getDistance(int poi, Alliance alliance, double x, double y) {
+      Pose2d pose = index.getPose(poi, alliance);
+      return Math.hypot(pose.getX() - x, pose.getY() - y);
+    }
   }
 
   /**
@@ -475,11 +557,14 @@ public class Swerve extends SubsystemBase {
     return drivebase.field;
   }
 
-  /** Resets the odometry if the robot has not received a global pose from the AprilTag system. */
+  /** Re-seeds the odometry if the robot has not received a global pose from the AprilTag system. */
   @Override
   public void periodic() {
     if (!Vision.getInstance().hasReceivedGlobalPose() && !Robot.getInstance().hasLeftDisabled()) {
-      resetOdometry();
+      seedOdometry();
     }
+
+    logTable.put("Pose", Pose2d.struct, getPose());
+    logTable.put("RobotVelocity", ChassisSpeeds.struct, getRobotVelocity());
   }
 }
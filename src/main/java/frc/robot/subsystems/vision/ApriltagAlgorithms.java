@@ -1,43 +1,123 @@
 package frc.robot.subsystems.vision;
 
-import edu.wpi.first.math.Matrix;
 import edu.wpi.first.math.geometry.Pose2d;
-import edu.wpi.first.math.numbers.N1;
-import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
 import frc.robot.Constants.ApriltagConstants;
+import frc.robot.Constants.FieldConstants;
+import frc.robot.subsystems.vision.scoring.ObservationFeatures;
 import java.util.List;
 import org.photonvision.targeting.PhotonTrackedTarget;
 
 public final class ApriltagAlgorithms {
-  public static boolean isUsable(PhotonTrackedTarget target) {
-    return ApriltagConstants.FIELD_LAYOUT.getTagPose(target.getFiducialId()).isPresent()
-        && target.getPoseAmbiguity() < ApriltagConstants.MAXIMUM_AMBIGUITY
-        && target.getBestCameraToTarget().getTranslation().toTranslation2d().getNorm()
-            < ApriltagConstants.SINGLE_TAG_CUTOFF_METER;
+  /**
+   * Checks a single target against the per-tag limits.
+   *
+   * @return The first limit the target fails, or null if it is usable
+   */
+  public static RejectionReason getRejectionReason(PhotonTrackedTarget target) {
+    if (!ApriltagConstants.TAG_POSES.contains(target.getFiducialId())) {
+      return RejectionReason.UNKNOWN_ID;
+    }
+    if (target.getPoseAmbiguity() >= ApriltagConstants.MAXIMUM_AMBIGUITY) {
+      return RejectionReason.AMBIGUITY;
+    }
+    return getDistanceRejectionReason(target);
+  }
+
+  private static RejectionReason getDistanceRejectionReason(PhotonTrackedTarget target) {
+    if (target.getBestCameraToTarget().getTranslation().toTranslation2d().getNorm()
+        >= ApriltagConstants.SINGLE_TAG_CUTOFF_METER) {
+      return RejectionReason.DISTANCE;
+    }
+    return null;
+  }
+
+  /**
+   * Checks the target of a single-tag solve against the per-tag limits.
+   *
+   * @param headingConstrained True if the solve takes the robot heading as given, which leaves a
+   *     single solution so ambiguity is not checked
+   * @return The first limit the target fails, or null if it is usable
+   */
+  public static RejectionReason getSingleTagRejectionReason(
+      PhotonTrackedTarget target, boolean headingConstrained) {
+    RejectionReason reason = getRejectionReason(target);
+    if (reason == RejectionReason.AMBIGUITY && headingConstrained) {
+      return getDistanceRejectionReason(target);
+    }
+    return reason;
+  }
+
+  /**
+   * Checks that a robot pose is physically possible: on the field carpet, on the floor and level.
+   *
+   * @return The first check the pose fails, or null if it is plausible
+   */
+  public static RejectionReason checkPose(Pose3d pose) {
+    double margin = ApriltagConstants.VISION_FIELD_MARGIN;
+    if (pose.getX() < -margin
+        || pose.getX() > FieldConstants.FIELD_LENGTH_METERS + margin
+        || pose.getY() < -margin
+        || pose.getY() > FieldConstants.FIELD_WIDTH_METERS + margin) {
+      return RejectionReason.OUT_OF_FIELD;
+    }
+    if (Math.abs(pose.getZ()) > ApriltagConstants.VISION_MAX_Z) {
+      return RejectionReason.OFF_FLOOR;
+    }
+
+    Rotation3d rotation = pose.getRotation();
+    if (Math.abs(rotation.getX()) > ApriltagConstants.VISION_MAX_TILT
+        || Math.abs(rotation.getY()) > ApriltagConstants.VISION_MAX_TILT) {
+      return RejectionReason.TILTED;
+    }
+    return null;
   }
 
-  public static Matrix<N3, N1> getEstimationStdDevs(
-      Pose2d estimatedPose, List<PhotonTrackedTarget> targets) {
+  /**
+   * Fills the tag count, average distance and average area of an observation. Targets that are not
+   * in the field layout are ignored.
+   */
+  public static void fillTagFeatures(
+      Pose2d estimatedPose, List<PhotonTrackedTarget> targets, ObservationFeatures features) {
     int numTags = 0;
     double totalDistance = 0;
-    for (PhotonTrackedTarget target : targets) {
-      var tagPose = ApriltagConstants.FIELD_LAYOUT.getTagPose(target.getFiducialId());
-      if (tagPose.isEmpty()) continue;
+    double totalArea = 0;
+    for (int i = 0; i < targets.size(); i++) {
+      PhotonTrackedTarget target = targets.get(i);
+      int id = target.getFiducialId();
+      if (!ApriltagConstants.TAG_POSES.contains(id)) continue;
 
       numTags++;
       totalDistance +=
-          tagPose.get().toPose2d().getTranslation().getDistance(estimatedPose.getTranslation());
+          ApriltagConstants.TAG_POSES.getDistance2d(id, estimatedPose.getX(), estimatedPose.getY());
+      totalArea += target.getArea();
     }
 
-    double avgDistance = totalDistance / numTags;
+    features.tagCount = numTags;
+    features.averageDistance = numTags > 0 ? totalDistance / numTags : 0.0;
+    features.averageArea = numTags > 0 ? totalArea / numTags : 0.0;
+  }
 
-    // Decrease std deviations further if more than one target is available
-    Matrix<N3, N1> stdDevs =
-        numTags == 1 ? ApriltagConstants.SINGLE_TAG_STD_DEVS : ApriltagConstants.MULTI_TAG_STD_DEVS;
+  /**
+   * Fills the tag count and average distance of an observation from its tag IDs. The tag area is
+   * left unknown. IDs that are not in the field layout are ignored.
+   */
+  public static void fillTagFeatures(
+      Pose2d estimatedPose, int[] ids, int count, ObservationFeatures features) {
+    int numTags = 0;
+    double totalDistance = 0;
+    for (int i = 0; i < count; i++) {
+      if (!ApriltagConstants.TAG_POSES.contains(ids[i])) continue;
 
-    // Increase std devs based on average distance
-    stdDevs = stdDevs.times(1 + (avgDistance * avgDistance / 30.0));
+      numTags++;
+      totalDistance +=
+          ApriltagConstants.TAG_POSES.getDistance2d(
+              ids[i], estimatedPose.getX(), estimatedPose.getY());
+    }
 
-    return stdDevs;
+    features.tagCount = numTags;
+    features.averageDistance = numTags > 0 ? totalDistance / numTags : 0.0;
+    features.averageArea = 0.0;
   }
 }
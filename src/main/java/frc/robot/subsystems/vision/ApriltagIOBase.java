@@ -0,0 +1,437 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.ApriltagConstants;
+import frc.robot.helpers.PhotonConfig;
+import frc.robot.subsystems.vision.Vision.AprilTagIOInputs;
+import frc.robot.subsystems.vision.scoring.ObservationFeatures;
+import frc.robot.subsystems.vision.scoring.ObservationScorer;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.DoubleSupplier;
+import org.photonvision.EstimatedRobotPose;
+import org.photonvision.PhotonPoseEstimator;
+import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+import org.photonvision.targeting.MultiTargetPNPResult;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+import org.photonvision.targeting.TargetCorner;
+
+/**
+ * Turns PhotonVision pipeline results into apriltag inputs: classifies targets, runs the pose
+ * estimator and scores each observation. Subclasses only decide where results come from.
+ */
+public abstract class ApriltagIOBase implements ApriltagIO {
+    /** Standard deviations attached to rejected observations, which are never fused. */
+    private static final Matrix<N3, N1> UNUSABLE_STD_DEVS =
+        VecBuilder.fill(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+    protected final PhotonConfig config;
+    private final PhotonPoseEstimator globalEstimator;
+    private final Transform3d robotToCamera;
+    private final double stdDevFactor;
+    private final ObservationScorer scorer;
+    private final DoubleSupplier angularVelocity;
+    private final ObservationFeatures features = new ObservationFeatures();
+    private final double[] stdDevs = new double[3];
+    private final VisionDiagnostics diagnostics;
+    /** Results older than the fusion horizon would be dropped by fusion, so they are not solved. */
+    private final ResultThrottle throttle =
+        new ResultThrottle(
+            ApriltagConstants.MAX_CAMERA_RESULTS, ApriltagConstants.VISION_FUSION_HORIZON);
+    private volatile boolean shedding = false;
+    /** Latest robot pose estimate, published whole so the pose and its timestamp always match. */
+    private volatile TimedPose robotPose;
+    private TimedPose lastHeading;
+    private volatile TagVisibilityIndex visibility;
+    private double lastExpectedSeenTime = Double.NaN;
+    private int unexpectedTags = 0;
+    private CameraIntrinsics intrinsics;
+
+    /**
+     * Creates a new apriltag IO.
+     *
+     * @param config The camera configuration
+     * @param scorer Computes the standard deviations of each observation
+     * @param angularVelocity Supplies the robot's current angular velocity in radians per second
+     */
+    protected ApriltagIOBase(
+            PhotonConfig config, ObservationScorer scorer, DoubleSupplier angularVelocity) {
+        this.config = config;
+        robotToCamera = config.transform();
+        stdDevFactor = config.stdDevFactor();
+        this.scorer = scorer;
+        this.angularVelocity = angularVelocity;
+        diagnostics = new VisionDiagnostics(config.name());
+
+        globalEstimator = new PhotonPoseEstimator(
+            ApriltagConstants.FIELD_LAYOUT,
+            PhotonPoseEstimator.PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR,
+            config.transform());
+
+        globalEstimator.setMultiTagFallbackStrategy(PhotonPoseEstimator.PoseStrategy.LOWEST_AMBIGUITY);
+    }
+
+    /**
+     * Reads the results that arrived since the last call.
+     *
+     * @return The new results, oldest first
+     */
+    protected abstract List<PhotonPipelineResult> readResults();
+
+    /** @return True if the result source is connected */
+    protected abstract boolean isConnected();
+
+    /** @return The camera calibration, or null if it is not known yet */
+    protected abstract CameraIntrinsics readIntrinsics();
+
+    /** @return The current time in seconds, in the same time base as result timestamps */
+    protected double now() {
+        return Timer.getFPGATimestamp();
+    }
+
+    @Override
+    public void setLoadShedding(boolean shedding) {
+        this.shedding = shedding;
+    }
+
+    @Override
+    public void setRobotPose(double timestamp, Pose2d pose) {
+        robotPose = new TimedPose(timestamp, pose);
+    }
+
+    @Override
+    public void setVisibilityIndex(TagVisibilityIndex index) {
+        visibility = index;
+    }
+
+    private record TimedPose(double timestamp, Pose2d pose) {}
+
+    @Override
+    public void updateInputs(AprilTagIOInputs inputs) {
+        double timestamp = now();
+        List<PhotonPipelineResult> allResults = readResults();
+        inputs.unreadCount = allResults.size();
+        List<PhotonPipelineResult> unreadResults = throttle.apply(allResults, timestamp, shedding);
+
+        boolean headingKnown = updateHeading();
+        PoseStrategy singleTagStrategy =
+            headingKnown ? PoseStrategy.PNP_DISTANCE_TRIG_SOLVE : PoseStrategy.LOWEST_AMBIGUITY;
+
+        ObservationBuffer valid = inputs.valid;
+        ObservationBuffer rejected = inputs.rejected;
+        valid.clear();
+        rejected.clear();
+        inputs.clearFrames();
+        inputs.resultCount = 0;
+
+        CameraIntrinsics cameraIntrinsics = getIntrinsics();
+
+        // Rejected data is only collected when diagnostics sample this update
+        boolean sampling = diagnostics.beginUpdate(timestamp);
+
+        for (int r = 0; r < unreadResults.size(); r++) {
+            PhotonPipelineResult result = unreadResults.get(r);
+            List<PhotonTrackedTarget> targets = result.getTargets();
+            inputs.addResultLatency(result.metadata.getLatencyMillis());
+
+            checkVisibility(targets, timestamp);
+
+            // Detected Corners
+            for (int t = 0; t < targets.size(); t++) {
+                PhotonTrackedTarget target = targets.get(t);
+                RejectionReason reason =
+                    ApriltagAlgorithms.getSingleTagRejectionReason(target, headingKnown);
+                if (reason == null) {
+                    valid.addCorners(target.getDetectedCorners());
+                    valid.addId(target.getFiducialId());
+                    valid.addTagPose(ApriltagConstants.TAG_POSES.getPose(target.getFiducialId()));
+                    continue;
+                }
+
+                diagnostics.count(reason);
+                if (sampling) {
+                    rejected.addCorners(target.getDetectedCorners());
+                    rejected.addId(target.getFiducialId());
+
+                    Pose3d tagPose = ApriltagConstants.TAG_POSES.getPose(target.getFiducialId());
+                    if (tagPose != null) {
+                        rejected.addTagPose(tagPose);
+                    }
+                }
+            }
+
+            // Corners for the robot-side joint solve across cameras
+            if (cameraIntrinsics != null) {
+                CameraFrame frame =
+                    toFrame(result.getTimestampSeconds(), targets, cameraIntrinsics);
+                if (frame != null) {
+                    inputs.addFrame(frame);
+                }
+            }
+
+            // Global Pose Estimation
+            Optional<EstimatedRobotPose> maybeEstimatedPose = globalEstimator.update(result);
+
+            if (!maybeEstimatedPose.isPresent()) {
+                continue;
+            }
+
+            EstimatedRobotPose estimatedPose = maybeEstimatedPose.get();
+
+            if (result.getMultiTagResult().isPresent()) {
+                MultiTargetPNPResult multiTagResult = result.getMultiTagResult().get();
+
+                Pose3d pose = estimatedPose.estimatedPose;
+                RejectionReason reason = ApriltagAlgorithms.checkPose(pose);
+                if (reason == null && !score(
+                        pose,
+                        estimatedPose.timestampSeconds,
+                        targets,
+                        multiTagResult.estimatedPose.bestReprojErr,
+                        multiTagResult.estimatedPose.ambiguity)) {
+                    reason = RejectionReason.SCORE;
+                }
+
+                if (reason != null) {
+                    diagnostics.count(reason);
+                    if (sampling) {
+                        rejected.addObservation(
+                            new PoseObservation(
+                                pose,
+                                estimatedPose.timestampSeconds,
+                                multiTagResult.estimatedPose.ambiguity,
+                                ApriltagConstants.NO_AMBIGUITY,
+                                UNUSABLE_STD_DEVS,
+                                PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR));
+                    }
+                    continue;
+                }
+
+                PoseObservation observation =
+                    new PoseObservation(
+                        pose,
+                        estimatedPose.timestampSeconds,
+                        multiTagResult.estimatedPose.ambiguity,
+                        ApriltagConstants.NO_AMBIGUITY,
+                        getStdDevs(),
+                        PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR);
+                valid.addObservation(observation);
+
+                for (int t = 0; t < targets.size(); t++) {
+                    PhotonTrackedTarget target = targets.get(t);
+                    valid.addCorners(target.getDetectedCorners());
+                    valid.addId(target.getFiducialId());
+
+                    Pose3d tagPose = ApriltagConstants.TAG_POSES.getPose(target.getFiducialId());
+                    if (tagPose != null) {
+                        valid.addTagPose(tagPose);
+                    }
+                }
+            } else if (!targets.isEmpty()) {
+                PhotonTrackedTarget target = targets.get(0);
+
+                // A heading constrained solve has a single solution, so ambiguity does not matter
+                Pose3d pose = estimatedPose.estimatedPose;
+                double ambiguity = headingKnown ? 0.0 : target.getPoseAmbiguity();
+                RejectionReason reason =
+                    ApriltagAlgorithms.getSingleTagRejectionReason(target, headingKnown);
+                if (reason == null) {
+                    reason = ApriltagAlgorithms.checkPose(pose);
+                }
+                if (reason == null
+                        && !score(pose, estimatedPose.timestampSeconds, targets, 0.0, ambiguity)) {
+                    reason = RejectionReason.SCORE;
+                }
+
+                if (reason != null) {
+                    diagnostics.count(reason);
+                }
+                if (reason == null || sampling) {
+                    PoseObservation observation =
+                        new PoseObservation(
+                            pose,
+                            estimatedPose.timestampSeconds,
+                            ambiguity,
+                            target.fiducialId,
+                            reason == null ? getStdDevs() : UNUSABLE_STD_DEVS,
+                            singleTagStrategy);
+
+                    if (reason == null) {
+                        valid.addObservation(observation);
+                    } else {
+                        rejected.addObservation(observation);
+                    }
+                }
+            }
+        }
+
+        inputs.connected = isConnected();
+        inputs.blind =
+            !Double.isNaN(lastExpectedSeenTime)
+                && timestamp - lastExpectedSeenTime > ApriltagConstants.CAMERA_BLIND_TIME;
+        inputs.throttledCount = throttle.getDroppedCount();
+        diagnostics.endUpdate(rejected);
+    }
+
+    /**
+     * Feeds the latest robot heading to the pose estimator. Once a heading is known, single-tag
+     * results are solved by {@link PoseStrategy#PNP_DISTANCE_TRIG_SOLVE}, which takes the heading
+     * as given and only solves for translation from the tag's distance and angles. Until then they
+     * fall back to the lowest ambiguity of the two PnP solutions.
+     *
+     * @return True if single-tag results are solved with a known heading
+     */
+    private boolean updateHeading() {
+        TimedPose timedPose = robotPose;
+        if (timedPose == null) {
+            return false;
+        }
+        if (timedPose != lastHeading) {
+            if (lastHeading == null) {
+                globalEstimator.setMultiTagFallbackStrategy(PoseStrategy.PNP_DISTANCE_TRIG_SOLVE);
+            }
+            globalEstimator.addHeadingData(timedPose.timestamp(), timedPose.pose().getRotation());
+            lastHeading = timedPose;
+        }
+        return true;
+    }
+
+    /**
+     * Compares the tags in a result with the tags the camera should see from the latest robot pose.
+     * Counts tags that should not be visible into {@link #unexpectedTags}, and tracks when the
+     * camera last saw a tag it was expected to.
+     */
+    private void checkVisibility(List<PhotonTrackedTarget> targets, double timestamp) {
+        unexpectedTags = 0;
+        TimedPose timedPose = robotPose;
+        TagVisibilityIndex visibility = this.visibility;
+        if (timedPose == null || visibility == null) {
+            return;
+        }
+        Pose2d pose = timedPose.pose();
+
+        double heading = pose.getRotation().getRadians();
+        long expected = visibility.getExpected(pose.getX(), pose.getY(), heading);
+        long possible = visibility.getPossible(pose.getX(), pose.getY(), heading);
+
+        boolean sawExpected = expected == 0;
+        for (int t = 0; t < targets.size(); t++) {
+            int id = targets.get(t).getFiducialId();
+            if (!ApriltagConstants.TAG_POSES.contains(id)) {
+                continue;
+            }
+            if (TagVisibilityIndex.contains(expected, id)) {
+                sawExpected = true;
+            }
+            if (!TagVisibilityIndex.contains(possible, id)) {
+                unexpectedTags++;
+            }
+        }
+
+        if (sawExpected || Double.isNaN(lastExpectedSeenTime)) {
+            lastExpectedSeenTime = timestamp;
+        }
+    }
+
+    /**
+     * Scores an observation into {@link #stdDevs}.
+     *
+     * @return False if the scorer rejected the observation
+     */
+    private boolean score(
+            Pose3d pose,
+            double timestamp,
+            List<PhotonTrackedTarget> targets,
+            double reprojectionError,
+            double ambiguity) {
+        features.reset();
+        ApriltagAlgorithms.fillTagFeatures(pose.toPose2d(), targets, features);
+        features.reprojectionError = reprojectionError;
+        features.ambiguity = ambiguity;
+        features.angularVelocity = angularVelocity.getAsDouble();
+        features.cameraStdDevFactor = stdDevFactor;
+        features.unexpectedTagCount = unexpectedTags;
+        recordFeatures(features, pose, timestamp);
+        return scorer.score(features, stdDevs);
+    }
+
+    /**
+     * Called with the features of every observation before it is scored, on the ingest thread.
+     * Does nothing by default.
+     *
+     * @param features The features, only valid during the call
+     * @param pose The pose the observation reported
+     * @param timestamp The capture time of the observation in seconds
+     */
+    protected void recordFeatures(ObservationFeatures features, Pose3d pose, double timestamp) {}
+
+    /** @return The standard deviations of the last accepted score as a vector */
+    private Matrix<N3, N1> getStdDevs() {
+        return VecBuilder.fill(stdDevs[0], stdDevs[1], stdDevs[2]);
+    }
+
+    /**
+     * Gets the camera calibration, caching it once it is known.
+     *
+     * @return The intrinsics, or null if the camera is not calibrated or not connected yet
+     */
+    private CameraIntrinsics getIntrinsics() {
+        if (intrinsics == null) {
+            intrinsics = readIntrinsics();
+        }
+        return intrinsics;
+    }
+
+    /**
+     * Packs the corners of all known tags in a result into a frame.
+     *
+     * @return The frame, or null if the result has no known tags
+     */
+    private CameraFrame toFrame(
+            double timestampSeconds,
+            List<PhotonTrackedTarget> targets,
+            CameraIntrinsics cameraIntrinsics) {
+        int known = 0;
+        for (int t = 0; t < targets.size(); t++) {
+            PhotonTrackedTarget target = targets.get(t);
+            if (ApriltagConstants.TAG_POSES.contains(target.getFiducialId())
+                    && target.getDetectedCorners().size() == 4) {
+                known++;
+            }
+        }
+        if (known == 0) {
+            return null;
+        }
+
+        int[] ids = new int[known];
+        double[] corners = new double[known * 8];
+        int index = 0;
+        for (int t = 0; t < targets.size(); t++) {
+            PhotonTrackedTarget target = targets.get(t);
+            List<TargetCorner> targetCorners = target.getDetectedCorners();
+            if (!ApriltagConstants.TAG_POSES.contains(target.getFiducialId())
+                    || targetCorners.size() != 4) {
+                continue;
+            }
+
+            ids[index] = target.getFiducialId();
+            for (int c = 0; c < 4; c++) {
+                corners[index * 8 + c * 2] = targetCorners.get(c).x;
+                corners[index * 8 + c * 2 + 1] = targetCorners.get(c).y;
+            }
+            index++;
+        }
+
+        return new CameraFrame(
+            config.name(), robotToCamera, cameraIntrinsics, timestampSeconds, ids, corners);
+    }
+}
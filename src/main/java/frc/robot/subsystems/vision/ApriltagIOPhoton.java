@@ -0,0 +1,113 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.math.numbers.N8;
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.robot.Constants.ApriltagConstants;
+import frc.robot.helpers.PhotonConfig;
+import frc.robot.subsystems.vision.scoring.ObservationScorer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.DoubleSupplier;
+import org.photonvision.PhotonCamera;
+import org.photonvision.targeting.PhotonPipelineResult;
+
+/**
+ * Reads apriltag results from a live PhotonVision camera. If a log directory is given, every raw
+ * result is also recorded so the match can be replayed with {@link ApriltagIOReplay}.
+ */
+public class ApriltagIOPhoton extends ApriltagIOBase {
+    protected final PhotonCamera camera;
+    private final VisionLogWriter log;
+    private boolean loggedIntrinsics = false;
+
+    /**
+     * Creates a new live apriltag camera IO.
+     *
+     * @param config The camera configuration
+     * @param scorer Computes the standard deviations of each observation
+     * @param angularVelocity Supplies the robot's current angular velocity in radians per second
+     * @param logDirectory Directory to record results to, or null to not record
+     */
+    public ApriltagIOPhoton(
+            PhotonConfig config,
+            ObservationScorer scorer,
+            DoubleSupplier angularVelocity,
+            Path logDirectory) {
+        super(config, scorer, angularVelocity);
+        camera = new PhotonCamera(config.name());
+        log = logDirectory != null ? openLog(logDirectory.resolve(getLogName(config))) : null;
+    }
+
+    /**
+     * Gets the file name a camera's results are recorded to.
+     *
+     * @param config The camera configuration
+     * @return The file name
+     */
+    public static String getLogName(PhotonConfig config) {
+        return config.name().replace(' ', '_') + ".pvlog";
+    }
+
+    /**
+     * Gets the directory to record to this boot, if recording is enabled and the log drive exists.
+     *
+     * @return The directory, or null to not record
+     */
+    public static Path getRecordingDirectory() {
+        Path root = Path.of(ApriltagConstants.VISION_LOG_DIRECTORY);
+        Path drive = root.getRoot().resolve(root.getName(0));
+        if (!ApriltagConstants.RECORD_VISION_LOGS || !Files.isDirectory(drive)) {
+            return null;
+        }
+        return root.resolve(Long.toString(System.currentTimeMillis()));
+    }
+
+    private static VisionLogWriter openLog(Path file) {
+        try {
+            return new VisionLogWriter(file);
+        } catch (IOException e) {
+            DriverStation.reportWarning(
+                "Could not open vision log " + file + ": " + e.getMessage(), false);
+            return null;
+        }
+    }
+
+    @Override
+    protected List<PhotonPipelineResult> readResults() {
+        List<PhotonPipelineResult> results = camera.getAllUnreadResults();
+        if (log != null) {
+            for (int i = 0; i < results.size(); i++) {
+                log.writeResult(results.get(i));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    protected boolean isConnected() {
+        return camera.isConnected();
+    }
+
+    @Override
+    protected CameraIntrinsics readIntrinsics() {
+        Optional<Matrix<N3, N3>> cameraMatrix = camera.getCameraMatrix();
+        Optional<Matrix<N8, N1>> distCoeffs = camera.getDistCoeffs();
+        if (cameraMatrix.isEmpty() || distCoeffs.isEmpty()) {
+            return null;
+        }
+
+        CameraIntrinsics intrinsics = CameraIntrinsics.of(cameraMatrix.get(), distCoeffs.get());
+        if (log != null && !loggedIntrinsics) {
+            log.writeIntrinsics(intrinsics);
+            loggedIntrinsics = true;
+        }
+        return intrinsics;
+    }
+}
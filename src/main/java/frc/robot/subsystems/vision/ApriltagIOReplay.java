@@ -0,0 +1,86 @@
+package frc.robot.subsystems.vision;
+
+import frc.robot.helpers.PhotonConfig;
+import frc.robot.subsystems.vision.scoring.ObservationScorer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+import org.photonvision.targeting.PhotonPipelineResult;
+
+/**
+ * Replays apriltag results recorded by {@link ApriltagIOPhoton}. Results are released as a clock
+ * passes their recorded capture time, shifted so that the log starts when replay starts. Driving
+ * the clock faster than real time replays a whole match in seconds.
+ */
+public class ApriltagIOReplay extends ApriltagIOBase {
+    private final VisionLogReader reader;
+    private final DoubleSupplier clock;
+    private final List<PhotonPipelineResult> results = new ArrayList<>();
+    private double timeOffset = Double.NaN;
+
+    /**
+     * Creates a new replay apriltag IO.
+     *
+     * @param config The configuration of the recorded camera
+     * @param scorer Computes the standard deviations of each observation
+     * @param angularVelocity Supplies the robot's current angular velocity in radians per second
+     * @param reader The log to replay
+     * @param clock Supplies the current time in seconds
+     */
+    public ApriltagIOReplay(
+            PhotonConfig config,
+            ObservationScorer scorer,
+            DoubleSupplier angularVelocity,
+            VisionLogReader reader,
+            DoubleSupplier clock) {
+        super(config, scorer, angularVelocity);
+        this.reader = reader;
+        this.clock = clock;
+    }
+
+    /**
+     * Jumps to a point in the log. The next read releases the results captured from that point on
+     * as if replay had started there.
+     *
+     * @param logTimestamp The time in the log's own time base in seconds
+     */
+    public void seek(double logTimestamp) {
+        reader.seek(logTimestamp);
+        timeOffset = clock.getAsDouble() - logTimestamp;
+    }
+
+    /** @return True if every result in the log has been released */
+    public boolean isFinished() {
+        return !reader.hasNext();
+    }
+
+    @Override
+    protected List<PhotonPipelineResult> readResults() {
+        double now = clock.getAsDouble();
+        if (Double.isNaN(timeOffset)) {
+            timeOffset = now - reader.getStartTimestamp();
+        }
+
+        results.clear();
+        while (reader.hasNext() && reader.peekTimestamp() + timeOffset <= now) {
+            results.add(reader.next(timeOffset));
+        }
+        return results;
+    }
+
+    @Override
+    protected double now() {
+        return clock.getAsDouble();
+    }
+
+    @Override
+    protected boolean isConnected() {
+        return reader.hasNext();
+    }
+
+    @Override
+    protected CameraIntrinsics readIntrinsics() {
+        return reader.getIntrinsics();
+    }
+}
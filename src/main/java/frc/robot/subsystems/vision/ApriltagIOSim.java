@@ -0,0 +1,103 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.ApriltagConstants;
+import frc.robot.helpers.PhotonConfig;
+import frc.robot.subsystems.vision.scoring.ObservationFeatures;
+import frc.robot.subsystems.vision.scoring.ObservationScorer;
+import frc.robot.subsystems.vision.scoring.ScorerReplay;
+
+import java.util.function.DoubleSupplier;
+import org.photonvision.simulation.PhotonCameraSim;
+import org.photonvision.simulation.SimCameraProperties;
+import org.photonvision.simulation.VisionSystemSim;
+
+/**
+ * Simulates an apriltag camera with PhotonVision's simulator. All simulated cameras share one
+ * vision system, which renders the field from the simulated robot pose passed to {@link
+ * #updateSim}. The camera model sets the corner noise, latency and frame rate, so the fusion
+ * pipeline can be measured against ground truth. The features of every observation are recorded
+ * with the true pose at its capture time, so scorers can be compared with {@link ScorerReplay}.
+ */
+public class ApriltagIOSim extends ApriltagIOPhoton {
+    /** Model of a simulated camera. */
+    public record Settings(
+        int resolutionWidth,
+        int resolutionHeight,
+        double diagonalFov,
+        double cornerErrorPixels,
+        double cornerErrorStdDevPixels,
+        double fps,
+        double latencyMillis,
+        double latencyStdDevMillis,
+        boolean videoStreams) {}
+
+    private static VisionSystemSim visionSim;
+
+    private static final ScorerReplay.Recorder recorder =
+        new ScorerReplay.Recorder(ApriltagConstants.SIM_SCORER_SAMPLES);
+
+    /**
+     * Creates a new simulated apriltag camera IO.
+     *
+     * @param config The camera configuration
+     * @param scorer Computes the standard deviations of each observation
+     * @param angularVelocity Supplies the robot's current angular velocity in radians per second
+     * @param settings The camera model
+     */
+    public ApriltagIOSim(
+            PhotonConfig config,
+            ObservationScorer scorer,
+            DoubleSupplier angularVelocity,
+            Settings settings) {
+        super(config, scorer, angularVelocity, null);
+
+        if (visionSim == null) {
+            visionSim = new VisionSystemSim("main");
+            visionSim.addAprilTags(ApriltagConstants.FIELD_LAYOUT);
+        }
+
+        SimCameraProperties properties = new SimCameraProperties();
+        properties.setCalibration(
+            settings.resolutionWidth(),
+            settings.resolutionHeight(),
+            Rotation2d.fromRadians(settings.diagonalFov()));
+        properties.setCalibError(
+            settings.cornerErrorPixels(), settings.cornerErrorStdDevPixels());
+        properties.setFPS(settings.fps());
+        properties.setAvgLatencyMs(settings.latencyMillis());
+        properties.setLatencyStdDevMs(settings.latencyStdDevMillis());
+
+        // Rendering the streams costs more than the pipeline itself on a desktop
+        PhotonCameraSim cameraSim = new PhotonCameraSim(camera, properties);
+        cameraSim.enableRawStream(settings.videoStreams());
+        cameraSim.enableProcessedStream(settings.videoStreams());
+        visionSim.addCamera(cameraSim, config.transform());
+    }
+
+    /**
+     * Renders every simulated camera from a robot pose. Call from the main robot thread once per
+     * simulation loop.
+     *
+     * @param robotPose The true simulated pose of the robot
+     */
+    public static void updateSim(Pose2d robotPose) {
+        if (visionSim != null) {
+            recorder.addReference(Timer.getFPGATimestamp(), robotPose);
+            visionSim.update(robotPose);
+        }
+    }
+
+    /** @return The observations of every simulated camera paired with the true pose */
+    public static ScorerReplay.Recorder getRecorder() {
+        return recorder;
+    }
+
+    @Override
+    protected void recordFeatures(ObservationFeatures features, Pose3d pose, double timestamp) {
+        recorder.record(features, pose.toPose2d(), timestamp);
+    }
+}
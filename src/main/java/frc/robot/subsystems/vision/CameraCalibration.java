@@ -0,0 +1,112 @@
+package frc.robot.subsystems.vision;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.robot.Constants.ApriltagConstants;
+import frc.robot.helpers.PhotonConfig;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Stores calibrated camera mounting transforms in a JSON file in the deploy directory, keyed by
+ * camera name. Calibrations written on the robot are lost on the next deploy unless the file is
+ * copied back into {@code src/main/deploy}.
+ */
+public final class CameraCalibration {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private CameraCalibration() {}
+
+  /**
+   * Calibrated mounting transform of one camera as stored in the file.
+   *
+   * @param x Forward offset in meters
+   * @param y Left offset in meters
+   * @param z Up offset in meters
+   * @param roll Roll in radians
+   * @param pitch Pitch in radians
+   * @param yaw Yaw in radians
+   * @param rmsError RMS reprojection error of the calibration in pixels
+   */
+  record Extrinsics(
+      double x, double y, double z, double roll, double pitch, double yaw, double rmsError) {
+    static Extrinsics of(Transform3d transform, double rmsError) {
+      Rotation3d rotation = transform.getRotation();
+      return new Extrinsics(
+          transform.getX(),
+          transform.getY(),
+          transform.getZ(),
+          rotation.getX(),
+          rotation.getY(),
+          rotation.getZ(),
+          rmsError);
+    }
+
+    Transform3d toTransform() {
+      return new Transform3d(new Translation3d(x, y, z), new Rotation3d(roll, pitch, yaw));
+    }
+  }
+
+  /**
+   * Replaces the measured transforms of cameras that have a calibration on file.
+   *
+   * @param measured The camera configurations with measured transforms
+   * @return The configurations with calibrated transforms where available
+   */
+  public static PhotonConfig[] apply(PhotonConfig[] measured) {
+    Map<String, Extrinsics> calibrations = read();
+    PhotonConfig[] configs = measured.clone();
+    for (int i = 0; i < configs.length; i++) {
+      Extrinsics extrinsics = calibrations.get(configs[i].name());
+      if (extrinsics != null) {
+        configs[i] =
+            new PhotonConfig(
+                configs[i].name(),
+                extrinsics.toTransform(),
+                configs[i].strategy(),
+                configs[i].stdDevFactor());
+      }
+    }
+    return configs;
+  }
+
+  /**
+   * Writes calibrations to the file, keeping the calibrations of cameras not given.
+   *
+   * @param calibrations The calibrations by camera name
+   * @throws IOException If the file cannot be written
+   */
+  static void write(Map<String, Extrinsics> calibrations) throws IOException {
+    Map<String, Extrinsics> merged = read();
+    merged.putAll(calibrations);
+    MAPPER.writerWithDefaultPrettyPrinter().writeValue(getFile().toFile(), merged);
+  }
+
+  /** Reads the file, or returns an empty map if it does not exist or cannot be read. */
+  private static Map<String, Extrinsics> read() {
+    Path file = getFile();
+    if (!Files.exists(file)) {
+      return new TreeMap<>();
+    }
+
+    try {
+      return MAPPER.readValue(file.toFile(), new TypeReference<TreeMap<String, Extrinsics>>() {});
+    } catch (IOException e) {
+      DriverStation.reportWarning(
+          "Could not read camera calibration " + file + ": " + e.getMessage(), false);
+      return new TreeMap<>();
+    }
+  }
+
+  private static Path getFile() {
+    return Filesystem.getDeployDirectory().toPath().resolve(ApriltagConstants.EXTRINSICS_FILE);
+  }
+}
@@ -0,0 +1,22 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Transform3d;
+
+/**
+ * Detected corners of all known tags in one camera result, together with what is needed to
+ * reproject them: the camera's mounting transform and its calibration.
+ *
+ * @param cameraName The name of the camera, which identifies it across configuration instances
+ * @param robotToCamera Transform from the robot center to the camera
+ * @param intrinsics Calibration of the camera
+ * @param timestampSeconds Capture timestamp of the result
+ * @param ids Fiducial IDs of the tags, one per tag
+ * @param corners Pixel corners packed as x, y pairs, four corners per tag in PhotonVision order
+ */
+public record CameraFrame(
+    String cameraName,
+    Transform3d robotToCamera,
+    CameraIntrinsics intrinsics,
+    double timestampSeconds,
+    int[] ids,
+    double[] corners) {}
@@ -0,0 +1,96 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import frc.robot.Constants.ApriltagConstants;
+import frc.robot.helpers.PhotonConfig;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs camera ingest off the main robot thread, with one worker thread per camera. Workers publish
+ * finished pose observations and corner frames into lock-free queues that the main thread drains
+ * each loop, so the cost of reading and solving camera results does not grow the main loop with the
+ * camera count.
+ */
+public final class CameraIngestExecutor {
+  private final List<CameraWorker> workers = new ArrayList<>();
+  private final Queue<PoseObservation> observations = new ConcurrentLinkedQueue<>();
+  private final Queue<CameraFrame> frames = new ConcurrentLinkedQueue<>();
+  private final ScheduledExecutorService executor;
+
+  /**
+   * Creates the executor and starts polling every camera.
+   *
+   * @param ios The camera IOs to poll
+   * @param configs The configuration of each camera, in the same order as the IOs
+   */
+  public CameraIngestExecutor(List<ApriltagIO> ios, List<PhotonConfig> configs) {
+    executor =
+        Executors.newScheduledThreadPool(
+            ios.size(),
+            runnable -> {
+              Thread thread = new Thread(runnable, "Vision Ingest");
+              thread.setDaemon(true);
+              return thread;
+            });
+
+    long periodMicros = (long) (ApriltagConstants.CAMERA_POLL_PERIOD * 1e6);
+    for (int i = 0; i < ios.size(); i++) {
+      CameraWorker worker = new CameraWorker(ios.get(i), configs.get(i), observations, frames);
+      workers.add(worker);
+      executor.scheduleAtFixedRate(worker, 0, periodMicros, TimeUnit.MICROSECONDS);
+    }
+  }
+
+  /**
+   * Gets the next finished observation from any camera.
+   *
+   * @return The observation, or null if none are waiting
+   */
+  public PoseObservation pollObservation() {
+    return observations.poll();
+  }
+
+  /**
+   * Gets the next detected corner frame from any camera.
+   *
+   * @return The frame, or null if none are waiting
+   */
+  public CameraFrame pollFrame() {
+    return frames.poll();
+  }
+
+  /**
+   * Sets whether every camera should shed load.
+   *
+   * @param shedding True to shed load
+   */
+  public void setLoadShedding(boolean shedding) {
+    for (CameraWorker worker : workers) {
+      worker.setLoadShedding(shedding);
+    }
+  }
+
+  /**
+   * Hands the latest robot pose estimate to every camera.
+   *
+   * @param timestamp The time the pose was estimated at in seconds
+   * @param pose The robot pose on the field
+   */
+  public void setRobotPose(double timestamp, Pose2d pose) {
+    for (CameraWorker worker : workers) {
+      worker.setRobotPose(timestamp, pose);
+    }
+  }
+
+  /** @return The workers, one per camera */
+  List<CameraWorker> getWorkers() {
+    return Collections.unmodifiableList(workers);
+  }
+}
@@ -0,0 +1,63 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+
+/**
+ * Pinhole camera model with Brown-Conrady distortion, matching the calibration PhotonVision
+ * reports. Projection works on points in the WPILib camera frame (X forward, Y left, Z up) and
+ * produces distorted pixel coordinates comparable with detected target corners.
+ */
+public record CameraIntrinsics(
+    double fx, double fy, double cx, double cy, double k1, double k2, double p1, double p2, double k3) {
+
+  /**
+   * Creates intrinsics from PhotonVision's calibration matrices.
+   *
+   * @param cameraMatrix The 3x3 camera matrix
+   * @param distCoeffs The distortion coefficients, in OpenCV order
+   * @return The camera intrinsics
+   */
+  public static CameraIntrinsics of(Matrix<N3, N3> cameraMatrix, Matrix<?, N1> distCoeffs) {
+    int rows = distCoeffs.getNumRows();
+    return new CameraIntrinsics(
+        cameraMatrix.get(0, 0),
+        cameraMatrix.get(1, 1),
+        cameraMatrix.get(0, 2),
+        cameraMatrix.get(1, 2),
+        rows > 0 ? distCoeffs.get(0, 0) : 0.0,
+        rows > 1 ? distCoeffs.get(1, 0) : 0.0,
+        rows > 2 ? distCoeffs.get(2, 0) : 0.0,
+        rows > 3 ? distCoeffs.get(3, 0) : 0.0,
+        rows > 4 ? distCoeffs.get(4, 0) : 0.0);
+  }
+
+  /**
+   * Projects a point in the camera frame to pixel coordinates.
+   *
+   * @param x Distance in front of the camera in meters
+   * @param y Distance to the left of the camera in meters
+   * @param z Distance above the camera in meters
+   * @param out Array of at least two elements that receives the pixel u and v
+   * @return False if the point is behind the camera
+   */
+  public boolean project(double x, double y, double z, double[] out) {
+    if (x <= 1e-6) {
+      return false;
+    }
+
+    // Normalized OpenCV image coordinates, right and down
+    double a = -y / x;
+    double b = -z / x;
+
+    double r2 = a * a + b * b;
+    double radial = 1 + r2 * (k1 + r2 * (k2 + r2 * k3));
+    double da = a * radial + 2 * p1 * a * b + p2 * (r2 + 2 * a * a);
+    double db = b * radial + p1 * (r2 + 2 * b * b) + 2 * p2 * a * b;
+
+    out[0] = fx * da + cx;
+    out[1] = fy * db + cy;
+    return true;
+  }
+}
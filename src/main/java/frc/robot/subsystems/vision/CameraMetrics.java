@@ -0,0 +1,153 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerArrayPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import frc.robot.Constants.ApriltagConstants;
+import frc.robot.helpers.Histogram;
+import frc.robot.subsystems.vision.Vision.AprilTagIOInputs;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Health and latency metrics for one camera. The ingest thread records the coprocessor pipeline
+ * latency, the unread result backlog and the time spent in {@link ApriltagIO#updateInputs}. The
+ * main thread records how old observations are when they reach fusion. Histograms and frame rate
+ * are published to NetworkTables for each window between publishes, so a slow coprocessor
+ * can be told apart from a slow robot loop.
+ */
+public final class CameraMetrics {
+  private static final double[] LATENCY_BOUNDS_MS = {
+    5, 10, 15, 20, 30, 40, 50, 75, 100, 150, 200, 300
+  };
+  private static final double[] UPDATE_BOUNDS_MS = {0.1, 0.25, 0.5, 1, 2, 5, 10, 20};
+  private static final double[] BACKLOG_BOUNDS = {0, 1, 2, 3, 4, 6, 8, 12, 16};
+
+  private final HistogramPublisher pipelineLatency;
+  private final HistogramPublisher fusionLatency;
+  private final HistogramPublisher updateTime;
+  private final HistogramPublisher backlog;
+
+  private final AtomicLong results = new AtomicLong();
+  private final DoublePublisher fpsPublisher;
+  private long lastResults = 0;
+  private double lastPublishTime = Double.NaN;
+  private long lastFusedSequence = 0;
+
+  /**
+   * Creates the metrics of a camera.
+   *
+   * @param cameraName The name of the camera
+   */
+  public CameraMetrics(String cameraName) {
+    NetworkTable table = NetworkTableInstance.getDefault().getTable("Vision/Metrics/" + cameraName);
+    pipelineLatency = new HistogramPublisher(table, "PipelineLatencyMs", LATENCY_BOUNDS_MS);
+    fusionLatency = new HistogramPublisher(table, "FusionLatencyMs", LATENCY_BOUNDS_MS);
+    updateTime = new HistogramPublisher(table, "UpdateTimeMs", UPDATE_BOUNDS_MS);
+    backlog = new HistogramPublisher(table, "Backlog", BACKLOG_BOUNDS);
+    fpsPublisher = table.getDoubleTopic("FPS").publish();
+  }
+
+  /**
+   * Records a camera update. Call from the ingest thread.
+   *
+   * @param inputs The inputs the update produced
+   * @param updateMillis The time spent updating the inputs in milliseconds
+   */
+  void recordUpdate(AprilTagIOInputs inputs, double updateMillis) {
+    updateTime.histogram.record(updateMillis);
+    backlog.histogram.record(inputs.unreadCount);
+    for (int i = 0; i < inputs.resultCount; i++) {
+      pipelineLatency.histogram.record(inputs.resultLatencies[i]);
+    }
+    results.addAndGet(inputs.unreadCount);
+  }
+
+  /**
+   * Records how old the observations of an update are when they reach fusion. Inputs that were
+   * already recorded are skipped, since the main thread sees the same inputs until the camera
+   * publishes again. Call from the main thread.
+   *
+   * @param inputs The latest inputs of the camera
+   * @param timestamp The current time in seconds
+   */
+  void recordFusion(AprilTagIOInputs inputs, double timestamp) {
+    if (inputs.sequence == lastFusedSequence) {
+      return;
+    }
+    lastFusedSequence = inputs.sequence;
+
+    for (int i = 0; i < inputs.valid.getObservationCount(); i++) {
+      double age = timestamp - inputs.valid.getObservation(i).timestampSeconds();
+      fusionLatency.histogram.record(age * 1000.0);
+    }
+  }
+
+  /**
+   * Publishes the metrics if the publish period has passed. Call from the main thread.
+   *
+   * @param timestamp The current time in seconds
+   */
+  void publish(double timestamp) {
+    if (Double.isNaN(lastPublishTime)) {
+      lastPublishTime = timestamp;
+      return;
+    }
+
+    double elapsed = timestamp - lastPublishTime;
+    if (elapsed < ApriltagConstants.CAMERA_METRICS_PERIOD) {
+      return;
+    }
+    lastPublishTime = timestamp;
+
+    long total = results.get();
+    fpsPublisher.set((total - lastResults) / elapsed);
+    lastResults = total;
+
+    pipelineLatency.publish();
+    fusionLatency.publish();
+    updateTime.publish();
+    backlog.publish();
+  }
+
+  /** Publishes a histogram's counts since the last publish with percentile estimates. */
+  private static final class HistogramPublisher {
+    final Histogram histogram;
+    private final long[] previous;
+    private final long[] current;
+    private final long[] window;
+    private final IntegerArrayPublisher countsPublisher;
+    private final DoublePublisher p50Publisher;
+    private final DoublePublisher p95Publisher;
+    private final DoubleArrayPublisher boundsPublisher;
+
+    HistogramPublisher(NetworkTable table, String name, double[] bounds) {
+      histogram = new Histogram(bounds);
+      previous = new long[histogram.getBucketCount()];
+      current = new long[histogram.getBucketCount()];
+      window = new long[histogram.getBucketCount()];
+
+      NetworkTable subtable = table.getSubTable(name);
+      countsPublisher = subtable.getIntegerArrayTopic("Counts").publish();
+      p50Publisher = subtable.getDoubleTopic("P50").publish();
+      p95Publisher = subtable.getDoubleTopic("P95").publish();
+      boundsPublisher = subtable.getDoubleArrayTopic("UpperBounds").publish();
+      boundsPublisher.set(bounds);
+    }
+
+    void publish() {
+      histogram.snapshot(current);
+      long total = 0;
+      for (int i = 0; i < window.length; i++) {
+        window[i] = current[i] - previous[i];
+        previous[i] = current[i];
+        total += window[i];
+      }
+
+      countsPublisher.set(window);
+      p50Publisher.set(histogram.getPercentile(window, total, 0.5));
+      p95Publisher.set(histogram.getPercentile(window, total, 0.95));
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.robot.helpers.PhotonConfig;
+import frc.robot.subsystems.vision.Vision.AprilTagIOInputs;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Polls a single apriltag camera on a background thread. Each poll drains the camera's unread
+ * results, runs pose estimation and pushes the finished observations and corner frames into shared
+ * queues. The inputs of every poll are handed to the main thread through a fixed pool, so each one
+ * is logged even though the camera is polled faster than the robot loop. If the main thread falls a
+ * whole pool behind, the oldest unlogged inputs are reused.
+ */
+final class CameraWorker implements Runnable {
+  private final ApriltagIO io;
+  private final PhotonConfig config;
+  private final Queue<PoseObservation> observations;
+  private final Queue<CameraFrame> frames;
+  /** Number of polled inputs that can wait for the main thread, about four robot loops. */
+  private static final int POOL_SIZE = 8;
+
+  // Every inputs object is either free, filled and waiting, or the main thread's latest
+  private final BlockingQueue<AprilTagIOInputs> free = new ArrayBlockingQueue<>(POOL_SIZE + 1);
+  private final BlockingQueue<AprilTagIOInputs> filled = new ArrayBlockingQueue<>(POOL_SIZE + 1);
+  private AprilTagIOInputs latest = new AprilTagIOInputs();
+
+  private final CameraMetrics metrics;
+  private long sequence = 0;
+
+  /**
+   * Creates a new camera worker.
+   *
+   * @param io The camera IO to poll
+   * @param config The camera configuration
+   * @param observations Queue that valid pose observations are published to
+   * @param frames Queue that detected corner frames are published to
+   */
+  CameraWorker(
+      ApriltagIO io,
+      PhotonConfig config,
+      Queue<PoseObservation> observations,
+      Queue<CameraFrame> frames) {
+    this.io = io;
+    this.config = config;
+    this.observations = observations;
+    this.frames = frames;
+    metrics = new CameraMetrics(config.name());
+    for (int i = 0; i < POOL_SIZE; i++) {
+      free.offer(new AprilTagIOInputs());
+    }
+  }
+
+  @Override
+  public void run() {
+    try {
+      AprilTagIOInputs back = free.poll();
+      if (back == null) {
+        // The main thread is behind, give up the oldest inputs it has not logged yet
+        back = filled.poll();
+        if (back == null) {
+          return;
+        }
+      }
+
+      long start = System.nanoTime();
+      io.updateInputs(back);
+      metrics.recordUpdate(back, (System.nanoTime() - start) / 1e6);
+      back.sequence = ++sequence;
+
+      // Frames first, the main thread polls observations first, so it never sees an observation
+      // before the frame it came from and can replace it with a joint solve of that frame
+      for (int i = 0; i < back.frameCount; i++) {
+        frames.offer(back.frames[i]);
+      }
+      for (int i = 0; i < back.valid.getObservationCount(); i++) {
+        observations.offer(back.valid.getObservation(i));
+      }
+
+      filled.offer(back);
+    } catch (RuntimeException e) {
+      // An escaping exception would silently cancel the scheduled task
+      DriverStation.reportError(
+          "Vision ingest for camera " + config.name() + " failed: " + e, e.getStackTrace());
+    }
+  }
+
+  /**
+   * Takes the inputs of the next poll the main thread has not seen, which become the latest
+   * inputs. The inputs returned by the previous call are reused afterwards. Only call from the
+   * main robot thread.
+   *
+   * @return The inputs, or null if every poll has been taken
+   */
+  AprilTagIOInputs pollInputs() {
+    AprilTagIOInputs next = filled.poll();
+    if (next != null) {
+      free.offer(latest);
+      latest = next;
+    }
+    return next;
+  }
+
+  /**
+   * Gets the inputs of the most recent poll taken by {@link #pollInputs}. Only call from the main
+   * robot thread.
+   *
+   * @return The latest inputs
+   */
+  AprilTagIOInputs getLatestInputs() {
+    return latest;
+  }
+
+  /**
+   * Sets whether the camera IO should shed load.
+   *
+   * @param shedding True to shed load
+   */
+  void setLoadShedding(boolean shedding) {
+    io.setLoadShedding(shedding);
+  }
+
+  /**
+   * Hands the latest robot pose estimate to the camera IO.
+   *
+   * @param timestamp The time the pose was estimated at in seconds
+   * @param pose The robot pose on the field
+   */
+  void setRobotPose(double timestamp, Pose2d pose) {
+    io.setRobotPose(timestamp, pose);
+  }
+
+  /** @return The health and latency metrics of the camera */
+  CameraMetrics getMetrics() {
+    return metrics;
+  }
+
+  /** @return The camera configuration */
+  PhotonConfig getConfig() {
+    return config;
+  }
+}
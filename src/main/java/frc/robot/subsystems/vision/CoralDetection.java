@@ -0,0 +1,286 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.wpilibj.Alert;
+import edu.wpi.first.wpilibj.Alert.AlertType;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.ApriltagConstants;
+import frc.robot.Constants.CoralDetectionConstants;
+import frc.robot.helpers.LogTable;
+import frc.robot.helpers.LoggableInputs;
+import frc.robot.helpers.OdometryHistory;
+import frc.robot.subsystems.CoralManipulator;
+import frc.robot.subsystems.Swerve;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Subsystem that tracks coral on the field with an object detection camera. Each detection is
+ * projected onto the floor from the robot pose at its capture time and fed to a {@link
+ * CoralTracker}, and tracks near the intake are dropped when the manipulator picks up a coral.
+ */
+public class CoralDetection extends SubsystemBase {
+  private static CoralDetection instance;
+
+  /**
+   * Detections read from the object detection camera. The arrays are allocated once and refilled
+   * in place by {@link CoralDetectionIO#updateInputs}, so the same instance should be reused every
+   * loop.
+   */
+  public static class CoralDetectionIOInputs implements LoggableInputs {
+    public boolean connected = false;
+
+    /** Number of detections this update. */
+    public int count = 0;
+
+    /** Capture time of each detection in seconds. */
+    public double[] timestamps = new double[4];
+
+    /** Yaw of each detection in radians, positive to the right. */
+    public double[] yaws = new double[4];
+
+    /** Pitch of each detection in radians, positive up. */
+    public double[] pitches = new double[4];
+
+    /** Confidence of each detection, between 0 and 1. */
+    public double[] confidences = new double[4];
+
+    public void addDetection(double timestamp, double yaw, double pitch, double confidence) {
+      if (count == timestamps.length) {
+        timestamps = Arrays.copyOf(timestamps, count * 2);
+        yaws = Arrays.copyOf(yaws, count * 2);
+        pitches = Arrays.copyOf(pitches, count * 2);
+        confidences = Arrays.copyOf(confidences, count * 2);
+      }
+      timestamps[count] = timestamp;
+      yaws[count] = yaw;
+      pitches[count] = pitch;
+      confidences[count] = confidence;
+      count++;
+    }
+
+    public void clear() {
+      count = 0;
+    }
+
+    @Override
+    public void toLog(LogTable table) {
+      table.put("Connected", connected);
+      table.put("Timestamps", timestamps, count);
+      table.put("Yaws", yaws, count);
+      table.put("Pitches", pitches, count);
+      table.put("Confidences", confidences, count);
+    }
+  }
+
+  private final CoralDetectionIO io;
+
+  /** The simulated IO, or null on a real robot. */
+  private final CoralDetectionIOSim sim;
+
+  private final CoralDetectionIOInputs inputs = new CoralDetectionIOInputs();
+
+  private final CoralTracker tracker =
+      new CoralTracker(
+          CoralDetectionConstants.MAX_TRACKS,
+          CoralDetectionConstants.PROCESS_NOISE,
+          CoralDetectionConstants.ASSOCIATION_DISTANCE,
+          CoralDetectionConstants.CONFIRM_HITS,
+          CoralDetectionConstants.TRACK_TIMEOUT);
+
+  private final OdometryHistory history =
+      new OdometryHistory(ApriltagConstants.ODOMETRY_HISTORY_SIZE);
+
+  private final Swerve swerve = Swerve.getInstance();
+
+  /** Camera to robot rotation, row major. */
+  private final double[] cameraRotation = new double[9];
+
+  private final double[] pose = new double[3];
+  private final double[] point = new double[2];
+
+  private final Alert disconnectedAlert =
+      new Alert(
+          "Coral Camera Disconnected",
+          "The coral detection camera is disconnected.",
+          AlertType.kWarning);
+
+  private final LogTable logTable = LogTable.getRoot().getSubtable("CoralDetection");
+
+  private CoralDetection() {
+    if (RobotBase.isReal()) {
+      io = new CoralDetectionIOPhoton(CoralDetectionConstants.CAMERA_NAME);
+      sim = null;
+    } else {
+      sim =
+          new CoralDetectionIOSim(
+              CoralDetectionConstants.ROBOT_TO_CAMERA, CoralDetectionConstants.SIM_CORAL);
+      io = sim;
+    }
+
+    var rotation = CoralDetectionConstants.ROBOT_TO_CAMERA.getRotation().toMatrix();
+    for (int row = 0; row < 3; row++) {
+      for (int column = 0; column < 3; column++) {
+        cameraRotation[row * 3 + column] = rotation.get(row, column);
+      }
+    }
+
+    CoralManipulator.getInstance()
+        .hasCoral
+        .onTrue(Commands.runOnce(this::removePickedUp).ignoringDisable(true));
+  }
+
+  /**
+   * Returns the singleton instance of the CoralDetection subsystem.
+   *
+   * @return the singleton instance
+   */
+  public static CoralDetection getInstance() {
+    if (instance == null) {
+      instance = new CoralDetection();
+    }
+    return instance;
+  }
+
+  @Override
+  public void periodic() {
+    double now = Timer.getFPGATimestamp();
+    Pose2d robotPose = swerve.getPose();
+    history.addSample(
+        now, robotPose.getX(), robotPose.getY(), robotPose.getRotation().getRadians());
+
+    io.updateInputs(inputs);
+    disconnectedAlert.set(!inputs.connected);
+    logTable.put("Inputs", inputs);
+
+    tracker.predict(now);
+    for (int i = 0; i < inputs.count; i++) {
+      if (inputs.confidences[i] < CoralDetectionConstants.MIN_CONFIDENCE
+          || !history.sample(inputs.timestamps[i], pose)) {
+        continue;
+      }
+
+      double variance = project(inputs.yaws[i], inputs.pitches[i]);
+      if (!Double.isNaN(variance)) {
+        tracker.update(inputs.timestamps[i], point[0], point[1], variance);
+      }
+    }
+
+    logTable.put("Tracks", tracker);
+    SmartDashboard.putNumber("Coral Tracks", tracker.getConfirmedCount());
+  }
+
+  @Override
+  public void simulationPeriodic() {
+    if (sim != null) {
+      swerve.getSwerveDrive().getSimulationDriveTrainPose().ifPresent(sim::updateSim);
+    }
+  }
+
+  /**
+   * Projects a detection onto the coral height plane from the robot pose in {@link #pose} and
+   * stores the field position in {@link #point}.
+   *
+   * @param yaw The detection yaw in radians, positive to the right
+   * @param pitch The detection pitch in radians, positive up
+   * @return The variance of the projected position in square meters, or NaN if the ray misses the
+   *     floor or lands out of range
+   */
+  private double project(double yaw, double pitch) {
+    // Pinhole ray in the camera frame, x forward, y left, z up
+    double cx = 1.0;
+    double cy = -Math.tan(yaw);
+    double cz = Math.tan(pitch);
+
+    double[] r = cameraRotation;
+    double rx = r[0] * cx + r[1] * cy + r[2] * cz;
+    double ry = r[3] * cx + r[4] * cy + r[5] * cz;
+    double rz = r[6] * cx + r[7] * cy + r[8] * cz;
+
+    Translation3d offset = CoralDetectionConstants.ROBOT_TO_CAMERA.getTranslation();
+    double height = offset.getZ() - CoralDetectionConstants.CORAL_HEIGHT;
+    if (rz >= 0 || height <= 0) {
+      return Double.NaN;
+    }
+
+    // Distance along the floor from the camera to the coral, in the robot frame
+    double scale = height / -rz;
+    double forward = offset.getX() + rx * scale;
+    double left = offset.getY() + ry * scale;
+    double range = Math.hypot(rx * scale, ry * scale);
+    if (range > CoralDetectionConstants.MAX_RANGE) {
+      return Double.NaN;
+    }
+
+    double cos = Math.cos(pose[2]);
+    double sin = Math.sin(pose[2]);
+    point[0] = pose[0] + forward * cos - left * sin;
+    point[1] = pose[1] + forward * sin + left * cos;
+
+    // Angle noise stretches into range error as the ray flattens toward the floor
+    double sigma =
+        (range * range + height * height) / height * CoralDetectionConstants.ANGLE_STD_DEV;
+    return sigma * sigma;
+  }
+
+  /** Drops the tracks in front of the intake after a coral is picked up. */
+  private void removePickedUp() {
+    Pose2d robotPose = swerve.getPose();
+    Translation2d intake =
+        robotPose
+            .getTranslation()
+            .plus(
+                new Translation2d(
+                    CoralDetectionConstants.INTAKE_OFFSET, robotPose.getRotation()));
+    tracker.removeNear(intake.getX(), intake.getY(), CoralDetectionConstants.PICKUP_RADIUS);
+  }
+
+  /**
+   * Gets the confirmed coral nearest to a point.
+   *
+   * @param from The point on the field
+   * @return The position of the coral, or empty if none are tracked
+   */
+  public Optional<Translation2d> getNearestCoral(Translation2d from) {
+    int track = tracker.findNearest(from.getX(), from.getY(), Double.POSITIVE_INFINITY, true);
+    if (track < 0) {
+      return Optional.empty();
+    }
+    return Optional.of(new Translation2d(tracker.getX(track), tracker.getY(track)));
+  }
+
+  /**
+   * Creates a command that drives to the nearest tracked coral, facing it with the intake offset
+   * in front of the robot. The target is chosen when the command starts, and nothing happens if no
+   * coral is tracked.
+   *
+   * @return The command
+   */
+  public Command driveToNearestCoral() {
+    return Commands.defer(
+        () -> {
+          Translation2d robot = swerve.getPose().getTranslation();
+          Optional<Translation2d> coral = getNearestCoral(robot);
+          if (coral.isEmpty()) {
+            return Commands.none();
+          }
+
+          Rotation2d heading = coral.get().minus(robot).getAngle();
+          Translation2d target =
+              coral
+                  .get()
+                  .minus(new Translation2d(CoralDetectionConstants.INTAKE_OFFSET, heading));
+          return swerve.driveToPose(new Pose2d(target, heading));
+        },
+        Set.of(swerve));
+  }
+}
@@ -0,0 +1,16 @@
+package frc.robot.subsystems.vision;
+
+import frc.robot.subsystems.vision.CoralDetection.CoralDetectionIOInputs;
+
+/**
+ * Source of coral detections from an object detection camera. Implementations read from a live
+ * camera or generate synthetic detections in simulation.
+ */
+public interface CoralDetectionIO {
+  /**
+   * Refills the inputs in place with every detection that arrived since the last call.
+   *
+   * @param inputs The inputs to fill
+   */
+  void updateInputs(CoralDetectionIOInputs inputs);
+}
@@ -0,0 +1,43 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.util.Units;
+import frc.robot.subsystems.vision.CoralDetection.CoralDetectionIOInputs;
+import java.util.List;
+import org.photonvision.PhotonCamera;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+
+/** Reads coral detections from a PhotonVision object detection pipeline. */
+public class CoralDetectionIOPhoton implements CoralDetectionIO {
+  private final PhotonCamera camera;
+
+  /**
+   * Creates a new live coral detection IO.
+   *
+   * @param cameraName The name of the camera in PhotonVision
+   */
+  public CoralDetectionIOPhoton(String cameraName) {
+    camera = new PhotonCamera(cameraName);
+  }
+
+  @Override
+  public void updateInputs(CoralDetectionIOInputs inputs) {
+    inputs.clear();
+    inputs.connected = camera.isConnected();
+
+    List<PhotonPipelineResult> results = camera.getAllUnreadResults();
+    for (int r = 0; r < results.size(); r++) {
+      PhotonPipelineResult result = results.get(r);
+      double timestamp = result.getTimestampSeconds();
+      List<PhotonTrackedTarget> targets = result.getTargets();
+      for (int t = 0; t < targets.size(); t++) {
+        PhotonTrackedTarget target = targets.get(t);
+        inputs.addDetection(
+            timestamp,
+            Units.degreesToRadians(target.getYaw()),
+            Units.degreesToRadians(target.getPitch()),
+            target.getDetectedObjectConfidence());
+      }
+    }
+  }
+}
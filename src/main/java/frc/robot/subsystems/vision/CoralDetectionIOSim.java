@@ -0,0 +1,80 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.CoralDetectionConstants;
+import frc.robot.subsystems.vision.CoralDetection.CoralDetectionIOInputs;
+import java.util.Random;
+
+/**
+ * Generates synthetic coral detections for simulation. Coral at fixed field positions are projected
+ * into the camera from the simulated robot pose, with angle noise and missed frames, so tracking
+ * and intake assist can be exercised without a camera.
+ */
+public class CoralDetectionIOSim implements CoralDetectionIO {
+  private final Transform3d robotToCamera;
+  private final Translation2d[] coral;
+  private final Random random = new Random();
+  private Pose2d robotPose;
+
+  /**
+   * Creates a new simulated coral detection IO.
+   *
+   * @param robotToCamera The camera mounting transform
+   * @param coral The coral positions on the field
+   */
+  public CoralDetectionIOSim(Transform3d robotToCamera, Translation2d[] coral) {
+    this.robotToCamera = robotToCamera;
+    this.coral = coral.clone();
+  }
+
+  /**
+   * Sets the pose detections are generated from. Call from the main robot thread once per
+   * simulation loop.
+   *
+   * @param robotPose The true simulated pose of the robot
+   */
+  public void updateSim(Pose2d robotPose) {
+    this.robotPose = robotPose;
+  }
+
+  @Override
+  public void updateInputs(CoralDetectionIOInputs inputs) {
+    inputs.clear();
+    inputs.connected = true;
+    if (robotPose == null) {
+      return;
+    }
+
+    double timestamp = Timer.getFPGATimestamp();
+    Pose3d camera = new Pose3d(robotPose).transformBy(robotToCamera);
+    for (Translation2d piece : coral) {
+      Translation3d relative =
+          new Translation3d(piece.getX(), piece.getY(), CoralDetectionConstants.CORAL_HEIGHT)
+              .minus(camera.getTranslation())
+              .rotateBy(camera.getRotation().unaryMinus());
+      if (relative.getX() <= 0) {
+        continue;
+      }
+
+      // PhotonVision yaw is positive to the right, pitch positive up
+      double yaw = -Math.atan2(relative.getY(), relative.getX());
+      double pitch = Math.atan2(relative.getZ(), relative.getX());
+      if (Math.abs(yaw) > CoralDetectionConstants.SIM_HORIZONTAL_FOV / 2
+          || Math.abs(pitch) > CoralDetectionConstants.SIM_VERTICAL_FOV / 2
+          || random.nextDouble() < CoralDetectionConstants.SIM_MISS_RATE) {
+        continue;
+      }
+
+      inputs.addDetection(
+          timestamp,
+          yaw + random.nextGaussian() * CoralDetectionConstants.ANGLE_STD_DEV,
+          pitch + random.nextGaussian() * CoralDetectionConstants.ANGLE_STD_DEV,
+          0.6 + 0.4 * random.nextDouble());
+    }
+  }
+}
@@ -0,0 +1,195 @@
+package frc.robot.subsystems.vision;
+
+import frc.robot.helpers.LogTable;
+import frc.robot.helpers.LoggableInputs;
+
+/**
+ * Tracks coral on the field from projected detections. Each track is a constant-position Kalman
+ * filter with an isotropic covariance, so the covariance is a single variance that grows with
+ * process noise over time and shrinks with each detection. Detections are associated with the
+ * nearest track within a gate, and tracks that go unseen for too long are dropped. Tracks are kept
+ * in preallocated arrays, so tracking never allocates.
+ */
+final class CoralTracker implements LoggableInputs {
+  private final double processNoise;
+  private final double associationDistance;
+  private final int confirmHits;
+  private final double timeout;
+
+  private final double[] xs;
+  private final double[] ys;
+  private final double[] variances;
+  private final double[] lastSeen;
+  private final int[] hits;
+  private int count = 0;
+  private double lastPredictTime = Double.NaN;
+
+  /**
+   * Creates a new coral tracker.
+   *
+   * @param capacity The maximum number of tracks
+   * @param processNoise Growth of a track's standard deviation per square root second in meters
+   * @param associationDistance Detections within this distance update a track in meters
+   * @param confirmHits Number of detections before a track is confirmed
+   * @param timeout Tracks without a detection for this long are dropped in seconds
+   */
+  CoralTracker(
+      int capacity,
+      double processNoise,
+      double associationDistance,
+      int confirmHits,
+      double timeout) {
+    this.processNoise = processNoise;
+    this.associationDistance = associationDistance;
+    this.confirmHits = confirmHits;
+    this.timeout = timeout;
+    xs = new double[capacity];
+    ys = new double[capacity];
+    variances = new double[capacity];
+    lastSeen = new double[capacity];
+    hits = new int[capacity];
+  }
+
+  /**
+   * Advances every track to a time, growing its variance and dropping stale tracks.
+   *
+   * @param timestamp The current time in seconds
+   */
+  void predict(double timestamp) {
+    double dt = Double.isNaN(lastPredictTime) ? 0.0 : Math.max(0.0, timestamp - lastPredictTime);
+    lastPredictTime = timestamp;
+
+    for (int i = count - 1; i >= 0; i--) {
+      if (timestamp - lastSeen[i] > timeout) {
+        remove(i);
+      } else {
+        variances[i] += processNoise * processNoise * dt;
+      }
+    }
+  }
+
+  /**
+   * Adds a detection, updating the nearest track within the association distance or starting a new
+   * one. If every track is in use, the longest unseen track is replaced.
+   *
+   * @param timestamp The capture time of the detection in seconds
+   * @param x The detected x position in meters
+   * @param y The detected y position in meters
+   * @param variance The variance of the detected position in square meters
+   */
+  void update(double timestamp, double x, double y, double variance) {
+    int track = findNearest(x, y, associationDistance, false);
+    if (track >= 0) {
+      double gain = variances[track] / (variances[track] + variance);
+      xs[track] += gain * (x - xs[track]);
+      ys[track] += gain * (y - ys[track]);
+      variances[track] *= 1 - gain;
+      lastSeen[track] = Math.max(lastSeen[track], timestamp);
+      hits[track]++;
+      return;
+    }
+
+    if (count < xs.length) {
+      track = count++;
+    } else {
+      track = 0;
+      for (int i = 1; i < count; i++) {
+        if (lastSeen[i] < lastSeen[track]) {
+          track = i;
+        }
+      }
+    }
+
+    xs[track] = x;
+    ys[track] = y;
+    variances[track] = variance;
+    lastSeen[track] = timestamp;
+    hits[track] = 1;
+  }
+
+  /**
+   * Drops every track within a radius of a point, such as coral that was just picked up.
+   *
+   * @param x The x position in meters
+   * @param y The y position in meters
+   * @param radius The radius in meters
+   */
+  void removeNear(double x, double y, double radius) {
+    for (int i = count - 1; i >= 0; i--) {
+      if (Math.hypot(xs[i] - x, ys[i] - y) <= radius) {
+        remove(i);
+      }
+    }
+  }
+
+  /**
+   * Finds the nearest track to a point.
+   *
+   * @param x The x position in meters
+   * @param y The y position in meters
+   * @param maxDistance Tracks further than this are ignored in meters
+   * @param confirmedOnly True to only consider confirmed tracks
+   * @return The index of the track, or -1 if there is none
+   */
+  int findNearest(double x, double y, double maxDistance, boolean confirmedOnly) {
+    int nearest = -1;
+    double nearestDistance = maxDistance;
+    for (int i = 0; i < count; i++) {
+      if (confirmedOnly && !isConfirmed(i)) {
+        continue;
+      }
+      double distance = Math.hypot(xs[i] - x, ys[i] - y);
+      if (distance <= nearestDistance) {
+        nearest = i;
+        nearestDistance = distance;
+      }
+    }
+    return nearest;
+  }
+
+  /** Removes a track by moving the last track into its slot. */
+  private void remove(int track) {
+    count--;
+    xs[track] = xs[count];
+    ys[track] = ys[count];
+    variances[track] = variances[count];
+    lastSeen[track] = lastSeen[count];
+    hits[track] = hits[count];
+  }
+
+  /** @return The number of tracks, confirmed or not */
+  int getCount() {
+    return count;
+  }
+
+  /** @return The number of confirmed tracks */
+  int getConfirmedCount() {
+    int confirmed = 0;
+    for (int i = 0; i < count; i++) {
+      if (isConfirmed(i)) {
+        confirmed++;
+      }
+    }
+    return confirmed;
+  }
+
+  boolean isConfirmed(int track) {
+    return hits[track] >= confirmHits;
+  }
+
+  double getX(int track) {
+    return xs[track];
+  }
+
+  double getY(int track) {
+    return ys[track];
+  }
+
+  @Override
+  public void toLog(LogTable table) {
+    table.put("X", xs, count);
+    table.put("Y", ys, count);
+    table.put("Variances", variances, count);
+    table.put("Hits", hits, count);
+  }
+}
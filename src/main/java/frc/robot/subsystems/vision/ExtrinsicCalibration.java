@@ -0,0 +1,99 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Transform3d;
+import frc.robot.Constants.ApriltagConstants;
+import frc.robot.helpers.OdometryHistory;
+import frc.robot.helpers.PhotonConfig;
+import frc.robot.helpers.TagPoseTable;
+
+/**
+ * One extrinsic calibration run. The robot starts at a known pose and rotates in place, so its pose
+ * at any time is the start position with the start heading plus the change in gyro yaw. Vision is
+ * kept out of the loop, since the estimate it would correct is built from the transforms being
+ * calibrated. Frames from each camera are recorded at a fixed spacing and solved per camera.
+ */
+final class ExtrinsicCalibration {
+  private final PhotonConfig[] configs;
+  private final ExtrinsicCalibrator[] calibrators;
+  private final double[] lastFrameTimes;
+  private final Pose2d startPose;
+  private final OdometryHistory history =
+      new OdometryHistory(ApriltagConstants.ODOMETRY_HISTORY_SIZE);
+  private final double[] pose = new double[3];
+  private double startYaw = Double.NaN;
+
+  /**
+   * Starts a calibration run.
+   *
+   * @param configs The cameras to calibrate, their transforms are the starting guesses
+   * @param tagPoses The tag poses
+   * @param startPose The pose the robot was placed at
+   */
+  ExtrinsicCalibration(PhotonConfig[] configs, TagPoseTable tagPoses, Pose2d startPose) {
+    this.configs = configs;
+    this.startPose = startPose;
+    double[] tagCorners = JointPoseEstimator.getTagCorners(tagPoses);
+    calibrators = new ExtrinsicCalibrator[configs.length];
+    lastFrameTimes = new double[configs.length];
+    for (int i = 0; i < configs.length; i++) {
+      calibrators[i] =
+          new ExtrinsicCalibrator(tagCorners, ApriltagConstants.CALIBRATION_MAX_FRAMES);
+      lastFrameTimes[i] = Double.NEGATIVE_INFINITY;
+    }
+  }
+
+  /**
+   * Records the gyro yaw. Call every loop while the robot rotates.
+   *
+   * @param timestamp The current time in seconds
+   * @param yaw The gyro yaw in radians
+   */
+  void recordYaw(double timestamp, double yaw) {
+    if (Double.isNaN(startYaw)) {
+      startYaw = yaw;
+    }
+    history.addSample(
+        timestamp,
+        startPose.getX(),
+        startPose.getY(),
+        startPose.getRotation().getRadians() + yaw - startYaw);
+  }
+
+  /**
+   * Records a frame if it belongs to a calibrated camera and enough time passed since that
+   * camera's last recorded frame.
+   *
+   * @param frame The frame
+   */
+  void addFrame(CameraFrame frame) {
+    for (int i = 0; i < configs.length; i++) {
+      if (!configs[i].name().equals(frame.cameraName())) {
+        continue;
+      }
+      double timestamp = frame.timestampSeconds();
+      if (timestamp - lastFrameTimes[i] >= ApriltagConstants.CALIBRATION_FRAME_PERIOD
+          && history.sample(timestamp, pose)
+          && calibrators[i].addFrame(frame, pose[0], pose[1], pose[2])) {
+        lastFrameTimes[i] = timestamp;
+      }
+      return;
+    }
+  }
+
+  /**
+   * Solves every camera with enough frames.
+   *
+   * @return The solutions in camera order, null for cameras that could not be solved
+   */
+  ExtrinsicCalibrator.Result[] solve() {
+    ExtrinsicCalibrator.Result[] results = new ExtrinsicCalibrator.Result[configs.length];
+    for (int i = 0; i < configs.length; i++) {
+      if (calibrators[i].getFrameCount() >= ApriltagConstants.CALIBRATION_MIN_FRAMES) {
+        Transform3d initial = configs[i].transform();
+        results[i] = calibrators[i].solve(initial);
+      }
+    }
+    return results;
+  }
+}
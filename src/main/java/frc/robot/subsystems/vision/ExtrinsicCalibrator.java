@@ -0,0 +1,331 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Quaternion;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import java.util.Arrays;
+
+/**
+ * Solves one camera's mounting transform from tag corners seen while the robot pose is known. The
+ * translation and a rotation vector applied on top of the starting rotation are found by
+ * Levenberg-Marquardt minimization of the corner reprojection error over every recorded frame.
+ * Views from many headings are needed, or rotation and translation errors cannot be told apart.
+ * This only runs in the pit, so it favors simplicity over avoiding allocation.
+ */
+final class ExtrinsicCalibrator {
+  /**
+   * A solved mounting transform.
+   *
+   * @param robotToCamera The transform from the robot center to the camera
+   * @param rmsError The RMS corner reprojection error in pixels
+   * @param frameCount The number of frames it was solved from
+   */
+  record Result(Transform3d robotToCamera, double rmsError, int frameCount) {}
+
+  /** Maximum number of solver iterations. */
+  private static final int MAX_ITERATIONS = 100;
+
+  /** Step size used for the numeric Jacobian. */
+  private static final double JACOBIAN_STEP = 1e-6;
+
+  /** Solving stops once a step is smaller than this. */
+  private static final double CONVERGENCE_STEP = 1e-9;
+
+  /** Translation x, y, z and rotation vector x, y, z. */
+  private static final int PARAMS = 6;
+
+  /** Values per point, robot x, y and heading, field x, y and z, and pixel u and v. */
+  private static final int STRIDE = 8;
+
+  private final double[] tagCorners;
+  private final int maxFrames;
+  private final double[] projected = new double[2];
+
+  private double[] points = new double[64 * STRIDE];
+  private int pointCount = 0;
+  private int frameCount = 0;
+  private CameraIntrinsics intrinsics;
+
+  /**
+   * Creates a new calibrator.
+   *
+   * @param tagCorners Field coordinates of every tag corner, see {@link
+   *     JointPoseEstimator#getTagCorners}
+   * @param maxFrames Frames beyond this many are ignored, bounding the solve time
+   */
+  ExtrinsicCalibrator(double[] tagCorners, int maxFrames) {
+    this.tagCorners = tagCorners;
+    this.maxFrames = maxFrames;
+  }
+
+  /**
+   * Records the tag corners of a frame together with the robot pose it was captured from.
+   *
+   * @param frame The frame
+   * @param robotX The robot x position in meters
+   * @param robotY The robot y position in meters
+   * @param robotTheta The robot heading in radians
+   * @return False if the frame was ignored because enough frames were recorded
+   */
+  boolean addFrame(CameraFrame frame, double robotX, double robotY, double robotTheta) {
+    if (frameCount >= maxFrames) {
+      return false;
+    }
+
+    int[] ids = frame.ids();
+    double[] corners = frame.corners();
+    int needed = (pointCount + ids.length * 4) * STRIDE;
+    if (needed > points.length) {
+      points = Arrays.copyOf(points, Math.max(needed, points.length * 2));
+    }
+
+    for (int t = 0; t < ids.length; t++) {
+      int id = ids[t];
+      if (id < 0 || id * 12 >= tagCorners.length) {
+        continue;
+      }
+      for (int c = 0; c < 4; c++) {
+        int base = pointCount * STRIDE;
+        points[base] = robotX;
+        points[base + 1] = robotY;
+        points[base + 2] = robotTheta;
+        System.arraycopy(tagCorners, id * 12 + c * 3, points, base + 3, 3);
+        points[base + 6] = corners[t * 8 + c * 2];
+        points[base + 7] = corners[t * 8 + c * 2 + 1];
+        pointCount++;
+      }
+    }
+
+    intrinsics = frame.intrinsics();
+    frameCount++;
+    return true;
+  }
+
+  /** @return The number of recorded frames */
+  int getFrameCount() {
+    return frameCount;
+  }
+
+  /**
+   * Solves the mounting transform.
+   *
+   * @param initial The transform to start from, usually the measured one
+   * @return The solution, or null if there were too few points or the solve failed
+   */
+  Result solve(Transform3d initial) {
+    if (pointCount < PARAMS || intrinsics == null) {
+      return null;
+    }
+
+    Rotation3d baseRotation = initial.getRotation();
+    double[] params = {initial.getX(), initial.getY(), initial.getZ(), 0.0, 0.0, 0.0};
+    int rows = pointCount * 2;
+    double[] residuals = new double[rows];
+    double[] perturbed = new double[rows];
+    double[] jacobian = new double[rows * PARAMS];
+    double[] normal = new double[PARAMS * PARAMS];
+    double[] damped = new double[PARAMS * PARAMS];
+    double[] gradient = new double[PARAMS];
+    double[] step = new double[PARAMS];
+    double[] trial = new double[PARAMS];
+
+    double cost = evaluate(params, baseRotation, residuals);
+    if (Double.isNaN(cost)) {
+      return null;
+    }
+
+    double lambda = 1e-3;
+    boolean converged = false;
+    for (int iteration = 0; iteration < MAX_ITERATIONS && !converged; iteration++) {
+      // Forward difference Jacobian, one column per parameter
+      for (int p = 0; p < PARAMS; p++) {
+        params[p] += JACOBIAN_STEP;
+        double perturbedCost = evaluate(params, baseRotation, perturbed);
+        params[p] -= JACOBIAN_STEP;
+        if (Double.isNaN(perturbedCost)) {
+          return null;
+        }
+        for (int r = 0; r < rows; r++) {
+          jacobian[r * PARAMS + p] = (perturbed[r] - residuals[r]) / JACOBIAN_STEP;
+        }
+      }
+
+      Arrays.fill(normal, 0.0);
+      Arrays.fill(gradient, 0.0);
+      for (int r = 0; r < rows; r++) {
+        for (int i = 0; i < PARAMS; i++) {
+          double ji = jacobian[r * PARAMS + i];
+          gradient[i] -= ji * residuals[r];
+          for (int j = i; j < PARAMS; j++) {
+            normal[i * PARAMS + j] += ji * jacobian[r * PARAMS + j];
+          }
+        }
+      }
+      for (int i = 0; i < PARAMS; i++) {
+        for (int j = 0; j < i; j++) {
+          normal[i * PARAMS + j] = normal[j * PARAMS + i];
+        }
+      }
+
+      boolean improved = false;
+      while (lambda < 1e8) {
+        System.arraycopy(normal, 0, damped, 0, normal.length);
+        for (int i = 0; i < PARAMS; i++) {
+          damped[i * PARAMS + i] *= 1 + lambda;
+        }
+        if (!solveLinear(damped, gradient.clone(), step)) {
+          return null;
+        }
+
+        double stepSize = 0;
+        for (int i = 0; i < PARAMS; i++) {
+          trial[i] = params[i] + step[i];
+          stepSize += Math.abs(step[i]);
+        }
+
+        double trialCost = evaluate(trial, baseRotation, perturbed);
+        if (!Double.isNaN(trialCost) && trialCost < cost) {
+          System.arraycopy(trial, 0, params, 0, PARAMS);
+          cost = trialCost;
+          double[] swap = residuals;
+          residuals = perturbed;
+          perturbed = swap;
+          lambda = Math.max(lambda / 10, 1e-7);
+          improved = true;
+          converged = stepSize < CONVERGENCE_STEP;
+          break;
+        }
+        lambda *= 10;
+      }
+
+      if (!improved) {
+        break;
+      }
+    }
+
+    Transform3d solved =
+        new Transform3d(
+            new Translation3d(params[0], params[1], params[2]), toRotation(params, baseRotation));
+    return new Result(solved, Math.sqrt(cost / pointCount), frameCount);
+  }
+
+  /** Applies the rotation vector in the parameters to the starting rotation. */
+  private static Rotation3d toRotation(double[] params, Rotation3d baseRotation) {
+    double angle = Math.sqrt(params[3] * params[3] + params[4] * params[4] + params[5] * params[5]);
+    if (angle < 1e-12) {
+      return baseRotation;
+    }
+    Rotation3d delta =
+        new Rotation3d(
+            VecBuilder.fill(params[3] / angle, params[4] / angle, params[5] / angle), angle);
+    return baseRotation.rotateBy(delta);
+  }
+
+  /**
+   * Computes the reprojection residuals for a set of parameters.
+   *
+   * @return The sum of squared residuals, or NaN if a corner falls behind the camera
+   */
+  private double evaluate(double[] params, Rotation3d baseRotation, double[] out) {
+    // Columns of the camera rotation matrix in the robot frame
+    Quaternion q = toRotation(params, baseRotation).getQuaternion();
+    double w = q.getW();
+    double x = q.getX();
+    double y = q.getY();
+    double z = q.getZ();
+    double r0 = 1 - 2 * (y * y + z * z);
+    double r1 = 2 * (x * y + w * z);
+    double r2 = 2 * (x * z - w * y);
+    double r3 = 2 * (x * y - w * z);
+    double r4 = 1 - 2 * (x * x + z * z);
+    double r5 = 2 * (y * z + w * x);
+    double r6 = 2 * (x * z + w * y);
+    double r7 = 2 * (y * z - w * x);
+    double r8 = 1 - 2 * (x * x + y * y);
+
+    double cost = 0;
+    for (int i = 0; i < pointCount; i++) {
+      int base = i * STRIDE;
+
+      // Field point into the robot frame
+      double cos = Math.cos(points[base + 2]);
+      double sin = Math.sin(points[base + 2]);
+      double fx = points[base + 3] - points[base];
+      double fy = points[base + 4] - points[base + 1];
+      double rx = cos * fx + sin * fy;
+      double ry = -sin * fx + cos * fy;
+      double rz = points[base + 5];
+
+      // Robot frame into the camera frame
+      double dx = rx - params[0];
+      double dy = ry - params[1];
+      double dz = rz - params[2];
+      double cx = r0 * dx + r1 * dy + r2 * dz;
+      double cy = r3 * dx + r4 * dy + r5 * dz;
+      double cz = r6 * dx + r7 * dy + r8 * dz;
+
+      if (!intrinsics.project(cx, cy, cz, projected)) {
+        return Double.NaN;
+      }
+
+      double du = projected[0] - points[base + 6];
+      double dv = projected[1] - points[base + 7];
+      out[i * 2] = du;
+      out[i * 2 + 1] = dv;
+      cost += du * du + dv * dv;
+    }
+    return cost;
+  }
+
+  /**
+   * Solves a square linear system by Gaussian elimination with partial pivoting.
+   *
+   * @param a The row-major matrix, overwritten
+   * @param b The right-hand side, overwritten
+   * @param out Receives the solution
+   * @return False if the matrix is singular
+   */
+  private static boolean solveLinear(double[] a, double[] b, double[] out) {
+    int n = b.length;
+    for (int col = 0; col < n; col++) {
+      int pivot = col;
+      for (int row = col + 1; row < n; row++) {
+        if (Math.abs(a[row * n + col]) > Math.abs(a[pivot * n + col])) {
+          pivot = row;
+        }
+      }
+      if (Math.abs(a[pivot * n + col]) < 1e-15) {
+        return false;
+      }
+      if (pivot != col) {
+        for (int k = 0; k < n; k++) {
+          double swap = a[col * n + k];
+          a[col * n + k] = a[pivot * n + k];
+          a[pivot * n + k] = swap;
+        }
+        double swap = b[col];
+        b[col] = b[pivot];
+        b[pivot] = swap;
+      }
+
+      for (int row = col + 1; row < n; row++) {
+        double factor = a[row * n + col] / a[col * n + col];
+        for (int k = col; k < n; k++) {
+          a[row * n + k] -= factor * a[col * n + k];
+        }
+        b[row] -= factor * b[col];
+      }
+    }
+
+    for (int row = n - 1; row >= 0; row--) {
+      double sum = b[row];
+      for (int k = row + 1; k < n; k++) {
+        sum -= a[row * n + k] * out[k];
+      }
+      out[row] = sum / a[row * n + row];
+    }
+    return true;
+  }
+}
@@ -0,0 +1,493 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Quaternion;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation3d;
+import frc.robot.Constants.ApriltagConstants;
+import frc.robot.helpers.OdometryHistory;
+import frc.robot.helpers.TagPoseTable;
+import frc.robot.subsystems.vision.scoring.ObservationFeatures;
+import frc.robot.subsystems.vision.scoring.ObservationScorer;
+import java.util.Arrays;
+import java.util.List;
+import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+import org.photonvision.estimation.TargetModel;
+
+/**
+ * Solves one robot pose from the tag corners seen by several cameras at nearly the same time. Each
+ * camera alone may only see a single tag, but together the views constrain the robot like a
+ * multi-tag solve. The robot is assumed to sit flat on the floor, so only x, y and heading are
+ * solved for, by damped Gauss-Newton minimization of the corner reprojection error through each
+ * camera's mounting transform and calibration.
+ *
+ * <p>The frames are captured up to the sync window apart, and the robot keeps moving in between.
+ * The pose is solved at the newest frame's capture time, and each older frame is reprojected from
+ * where odometry says the robot was when that frame was captured.
+ */
+public final class JointPoseEstimator {
+  /** Maximum number of solver iterations per solve. */
+  private static final int MAX_ITERATIONS = 15;
+
+  /** Step size used for the numeric Jacobian. */
+  private static final double JACOBIAN_STEP = 1e-5;
+
+  /** Solving stops once a step is smaller than this. */
+  private static final double CONVERGENCE_STEP = 1e-6;
+
+  /** Field coordinates of every tag corner, twelve values per fiducial ID. */
+  private final double[] tagCorners;
+
+  private final double syncWindowSeconds;
+
+  private final ObservationScorer scorer;
+  private final ObservationFeatures features = new ObservationFeatures();
+  private final double[] stdDevs = new double[3];
+
+  private CameraFrame[] latestFrames = new CameraFrame[4];
+  private int cameraCount = 0;
+
+  private double lastSolvedTimestamp = Double.NEGATIVE_INFINITY;
+
+  /** Number of frames combined by the last solve, set when it returns an observation. */
+  private int solvedFrameCount = 0;
+
+  // Per-solve problem, camera i owns cameraParams[i * 12 .. i * 12 + 11]
+  private double[] cameraParams = new double[4 * 12];
+  private CameraIntrinsics[] cameraIntrinsics = new CameraIntrinsics[4];
+  private double[] frameTimestamps = new double[4];
+
+  /** Odometry motion from the solve time to each frame, x, y and heading in the robot frame. */
+  private double[] frameMotion = new double[4 * 3];
+
+  /** Robot pose at each frame's capture for the pose being evaluated, x, y, cos and sin. */
+  private double[] framePoses = new double[4 * 4];
+
+  private int frameCount;
+  private final double[] solveOdometry = new double[3];
+  private final double[] frameOdometry = new double[3];  private int[] pointCamera = new int[64];
+  private double[] pointField = new double[64 * 3];
+  private double[] pointPixel = new double[64 * 2];
+  private int[] ids = new int[16];
+  private int pointCount;
+  private int idCount;
+
+  private double[] residuals = new double[128];
+  private double[] perturbed = new double[128];
+  private double[] jacobian = new double[128 * 3];
+  private final double[] projected = new double[2];
+
+  /**
+   * Creates a new joint pose estimator.
+   *
+   * @param tagPoses The tag poses to solve against
+   * @param syncWindowSeconds Frames further apart in time than this are not combined
+   * @param scorer Computes the standard deviations of each joint observation
+   */
+  public JointPoseEstimator(
+      TagPoseTable tagPoses, double syncWindowSeconds, ObservationScorer scorer) {
+    this.syncWindowSeconds = syncWindowSeconds;
+    this.scorer = scorer;
+    tagCorners = getTagCorners(tagPoses);
+  }
+
+  /**
+   * Computes the field coordinates of every tag corner, in the order PhotonVision reports detected
+   * corners.
+   *
+   * @param tagPoses The tag poses
+   * @return Twelve values per fiducial ID, x, y and z of each of the four corners
+   */
+  static double[] getTagCorners(TagPoseTable tagPoses) {
+    double[] corners = new double[tagPoses.size() * 12];
+    for (int id = 0; id < tagPoses.size(); id++) {
+      if (!tagPoses.contains(id)) {
+        continue;
+      }
+      List<Translation3d> vertices =
+          TargetModel.kAprilTag36h11.getFieldVertices(tagPoses.getPose(id));
+      for (int c = 0; c < 4; c++) {
+        corners[id * 12 + c * 3] = vertices.get(c).getX();
+        corners[id * 12 + c * 3 + 1] = vertices.get(c).getY();
+        corners[id * 12 + c * 3 + 2] = vertices.get(c).getZ();
+      }
+    }
+    return corners;
+  }
+
+  /**
+   * Records the latest frame from a camera, replacing any previous frame from the same camera.
+   *
+   * @param frame The frame
+   */
+  public void addFrame(CameraFrame frame) {
+    for (int i = 0; i < cameraCount; i++) {
+      if (latestFrames[i] != null && latestFrames[i].cameraName().equals(frame.cameraName())) {
+        if (frame.timestampSeconds() >= latestFrames[i].timestampSeconds()) {
+          latestFrames[i] = frame;
+        }
+        return;
+      }
+    }
+
+    for (int i = 0; i < cameraCount; i++) {
+      if (latestFrames[i] == null) {
+        latestFrames[i] = frame;
+        return;
+      }
+    }
+
+    if (cameraCount == latestFrames.length) {
+      latestFrames = Arrays.copyOf(latestFrames, latestFrames.length * 2);
+    }
+    latestFrames[cameraCount++] = frame;
+  }
+
+  /**
+   * Solves a joint pose if at least two cameras have new frames within the sync window.
+   *
+   * @param seed The pose to start the solve from, usually the current pose estimate
+   * @param angularVelocity The robot's current angular velocity in radians per second
+   * @param odometry The odometry history, to move every frame to the newest capture time
+   * @return The joint observation at the newest frame's capture time, or null if there was nothing
+   *     to solve or the solve failed
+   */
+  public PoseObservation solve(Pose2d seed, double angularVelocity, OdometryHistory odometry) {
+    double newest = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < cameraCount; i++) {
+      if (latestFrames[i] != null) {
+        newest = Math.max(newest, latestFrames[i].timestampSeconds());
+      }
+    }
+    if (newest <= lastSolvedTimestamp) {
+      return null;
+    }
+
+    // Without odometry at the solve time, frames are assumed to be captured from the same pose
+    boolean compensate = odometry.sample(newest, solveOdometry);
+
+    int frames = 0;
+    pointCount = 0;
+    idCount = 0;
+    for (int i = 0; i < cameraCount; i++) {
+      CameraFrame frame = latestFrames[i];
+      if (frame == null
+          || frame.timestampSeconds() <= lastSolvedTimestamp
+          || newest - frame.timestampSeconds() > syncWindowSeconds) {
+        continue;
+      }
+      addCamera(frames, frame, compensate, odometry);
+      frames++;
+    }
+    frameCount = frames;
+
+    if (frames < 2 || pointCount < 8) {
+      return null;
+    }
+
+    lastSolvedTimestamp = newest;
+
+    double[] params = {seed.getX(), seed.getY(), seed.getRotation().getRadians()};
+    double cost = optimize(params);
+    if (Double.isNaN(cost)) {
+      return null;
+    }
+
+    double rmsError = Math.sqrt(cost / pointCount);
+    if (rmsError > ApriltagConstants.JOINT_SOLVE_MAX_REPROJECTION_ERROR) {
+      return null;
+    }
+
+    Pose2d pose = new Pose2d(params[0], params[1], new Rotation2d(params[2]));
+
+    features.reset();
+    ApriltagAlgorithms.fillTagFeatures(pose, ids, idCount, features);
+    features.reprojectionError = rmsError;
+    features.angularVelocity = angularVelocity;
+    if (!scorer.score(features, stdDevs)) {
+      return null;
+    }
+
+    solvedFrameCount = frames;
+    return new PoseObservation(
+        new Pose3d(pose),
+        newest,
+        0.0,
+        ApriltagConstants.NO_AMBIGUITY,
+        VecBuilder.fill(stdDevs[0], stdDevs[1], stdDevs[2]),
+        PoseStrategy.MULTI_TAG_PNP_ON_RIO);
+  }
+
+  /**
+   * Gets the number of frames combined by the last solve. Only call right after {@link #solve}
+   * returned an observation.
+   *
+   * @return The number of frames
+   */
+  public int getSolvedFrameCount() {
+    return solvedFrameCount;
+  }
+
+  /**
+   * Gets the capture time of a frame combined by the last solve. Only call right after {@link
+   * #solve} returned an observation.
+   *
+   * @param index The index of the frame, below {@link #getSolvedFrameCount}
+   * @return The capture time in seconds
+   */
+  public double getSolvedFrameTimestamp(int index) {
+    return frameTimestamps[index];
+  }
+
+  /**
+   * Appends the mounting transform, odometry motion and known tag corners of a frame to the current
+   * problem.
+   */
+  private void addCamera(
+      int camera, CameraFrame frame, boolean compensate, OdometryHistory odometry) {
+    if ((camera + 1) * 12 > cameraParams.length) {
+      cameraParams = Arrays.copyOf(cameraParams, cameraParams.length * 2);
+      cameraIntrinsics = Arrays.copyOf(cameraIntrinsics, cameraIntrinsics.length * 2);
+      frameTimestamps = Arrays.copyOf(frameTimestamps, frameTimestamps.length * 2);
+      frameMotion = Arrays.copyOf(frameMotion, frameMotion.length * 2);
+      framePoses = Arrays.copyOf(framePoses, framePoses.length * 2);
+    }
+
+    // Where the robot was at this frame's capture, relative to where it was at the solve time
+    double motionX = 0;
+    double motionY = 0;
+    double motionTheta = 0;
+    if (compensate && odometry.sample(frame.timestampSeconds(), frameOdometry)) {
+      double cos = Math.cos(solveOdometry[2]);
+      double sin = Math.sin(solveOdometry[2]);
+      double dx = frameOdometry[0] - solveOdometry[0];
+      double dy = frameOdometry[1] - solveOdometry[1];
+      motionX = cos * dx + sin * dy;
+      motionY = -sin * dx + cos * dy;
+      motionTheta = frameOdometry[2] - solveOdometry[2];
+    }
+    frameMotion[camera * 3] = motionX;
+    frameMotion[camera * 3 + 1] = motionY;
+    frameMotion[camera * 3 + 2] = motionTheta;
+
+    // Camera translation and the columns of its rotation matrix in the robot frame
+    Quaternion q = frame.robotToCamera().getRotation().getQuaternion();
+    double w = q.getW();
+    double x = q.getX();
+    double y = q.getY();
+    double z = q.getZ();
+    int base = camera * 12;
+    cameraParams[base] = frame.robotToCamera().getX();
+    cameraParams[base + 1] = frame.robotToCamera().getY();
+    cameraParams[base + 2] = frame.robotToCamera().getZ();
+    cameraParams[base + 3] = 1 - 2 * (y * y + z * z);
+    cameraParams[base + 4] = 2 * (x * y + w * z);
+    cameraParams[base + 5] = 2 * (x * z - w * y);
+    cameraParams[base + 6] = 2 * (x * y - w * z);
+    cameraParams[base + 7] = 1 - 2 * (x * x + z * z);
+    cameraParams[base + 8] = 2 * (y * z + w * x);
+    cameraParams[base + 9] = 2 * (x * z + w * y);
+    cameraParams[base + 10] = 2 * (y * z - w * x);
+    cameraParams[base + 11] = 1 - 2 * (x * x + y * y);
+    cameraIntrinsics[camera] = frame.intrinsics();
+    frameTimestamps[camera] = frame.timestampSeconds();
+
+    int[] frameIds = frame.ids();
+    double[] corners = frame.corners();
+    for (int t = 0; t < frameIds.length; t++) {
+      int id = frameIds[t];
+      if (id < 0 || id * 12 >= tagCorners.length || !ApriltagConstants.TAG_POSES.contains(id)) {
+        continue;
+      }
+
+      if (idCount == ids.length) {
+        ids = Arrays.copyOf(ids, ids.length * 2);
+      }
+      ids[idCount++] = id;
+
+      ensurePointCapacity(pointCount + 4);
+      for (int c = 0; c < 4; c++) {
+        pointCamera[pointCount] = camera;
+        System.arraycopy(tagCorners, id * 12 + c * 3, pointField, pointCount * 3, 3);
+        pointPixel[pointCount * 2] = corners[t * 8 + c * 2];
+        pointPixel[pointCount * 2 + 1] = corners[t * 8 + c * 2 + 1];
+        pointCount++;
+      }
+    }
+  }
+
+  private void ensurePointCapacity(int points) {
+    if (points <= pointCamera.length) {
+      return;
+    }
+    int capacity = Math.max(points, pointCamera.length * 2);
+    pointCamera = Arrays.copyOf(pointCamera, capacity);
+    pointField = Arrays.copyOf(pointField, capacity * 3);
+    pointPixel = Arrays.copyOf(pointPixel, capacity * 2);
+    residuals = new double[capacity * 2];
+    perturbed = new double[capacity * 2];
+    jacobian = new double[capacity * 2 * 3];
+  }
+
+  /**
+   * Minimizes the reprojection error over x, y and heading.
+   *
+   * @param params The starting pose, replaced with the solution
+   * @return The final sum of squared pixel errors, or NaN if the solve failed
+   */
+  private double optimize(double[] params) {
+    int rows = pointCount * 2;
+    double cost = evaluate(params[0], params[1], params[2], residuals);
+    if (Double.isNaN(cost)) {
+      return Double.NaN;
+    }
+
+    double lambda = 1e-3;
+    for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+      // Forward difference Jacobian, one column per parameter
+      for (int p = 0; p < 3; p++) {
+        params[p] += JACOBIAN_STEP;
+        double perturbedCost = evaluate(params[0], params[1], params[2], perturbed);
+        params[p] -= JACOBIAN_STEP;
+        if (Double.isNaN(perturbedCost)) {
+          return Double.NaN;
+        }
+        for (int r = 0; r < rows; r++) {
+          jacobian[r * 3 + p] = (perturbed[r] - residuals[r]) / JACOBIAN_STEP;
+        }
+      }
+
+      // Normal equations, J^T J is symmetric so only the upper triangle is accumulated
+      double a00 = 0, a01 = 0, a02 = 0, a11 = 0, a12 = 0, a22 = 0;
+      double g0 = 0, g1 = 0, g2 = 0;
+      for (int r = 0; r < rows; r++) {
+        double j0 = jacobian[r * 3];
+        double j1 = jacobian[r * 3 + 1];
+        double j2 = jacobian[r * 3 + 2];
+        a00 += j0 * j0;
+        a01 += j0 * j1;
+        a02 += j0 * j2;
+        a11 += j1 * j1;
+        a12 += j1 * j2;
+        a22 += j2 * j2;
+        g0 += j0 * residuals[r];
+        g1 += j1 * residuals[r];
+        g2 += j2 * residuals[r];
+      }
+
+      boolean improved = false;
+      while (lambda < 1e8) {
+        double d00 = a00 * (1 + lambda);
+        double d11 = a11 * (1 + lambda);
+        double d22 = a22 * (1 + lambda);
+
+        // Cramer's rule on the damped 3x3 system
+        double det =
+            d00 * (d11 * d22 - a12 * a12)
+                - a01 * (a01 * d22 - a12 * a02)
+                + a02 * (a01 * a12 - d11 * a02);
+        if (Math.abs(det) < 1e-12) {
+          return Double.NaN;
+        }
+        double s0 =
+            -(g0 * (d11 * d22 - a12 * a12)
+                    - a01 * (g1 * d22 - a12 * g2)
+                    + a02 * (g1 * a12 - d11 * g2))
+                / det;
+        double s1 =
+            -(d00 * (g1 * d22 - a12 * g2)
+                    - g0 * (a01 * d22 - a12 * a02)
+                    + a02 * (a01 * g2 - g1 * a02))
+                / det;
+        double s2 =
+            -(d00 * (d11 * g2 - g1 * a12)
+                    - a01 * (a01 * g2 - g1 * a02)
+                    + g0 * (a01 * a12 - d11 * a02))
+                / det;
+
+        double newCost = evaluate(params[0] + s0, params[1] + s1, params[2] + s2, perturbed);
+        if (!Double.isNaN(newCost) && newCost < cost) {
+          params[0] += s0;
+          params[1] += s1;
+          params[2] += s2;
+          cost = newCost;
+          double[] swap = residuals;
+          residuals = perturbed;
+          perturbed = swap;
+          lambda = Math.max(lambda / 10, 1e-7);
+          improved = true;
+
+          if (Math.abs(s0) + Math.abs(s1) + Math.abs(s2) < CONVERGENCE_STEP) {
+            return cost;
+          }
+          break;
+        }
+        lambda *= 10;
+      }
+
+      if (!improved) {
+        break;
+      }
+    }
+
+    return cost;
+  }
+
+  /**
+   * Computes the reprojection residuals for a robot pose.
+   *
+   * @return The sum of squared residuals, or NaN if a corner falls behind its camera
+   */
+  private double evaluate(double robotX, double robotY, double robotTheta, double[] out) {
+    double cos = Math.cos(robotTheta);
+    double sin = Math.sin(robotTheta);
+    double cost = 0;
+
+    // The robot pose each frame was captured from, given this pose at the solve time
+    for (int f = 0; f < frameCount; f++) {
+      double motionX = frameMotion[f * 3];
+      double motionY = frameMotion[f * 3 + 1];
+      double theta = robotTheta + frameMotion[f * 3 + 2];
+      framePoses[f * 4] = robotX + cos * motionX - sin * motionY;
+      framePoses[f * 4 + 1] = robotY + sin * motionX + cos * motionY;
+      framePoses[f * 4 + 2] = Math.cos(theta);
+      framePoses[f * 4 + 3] = Math.sin(theta);
+    }
+
+    for (int i = 0; i < pointCount; i++) {
+      // Field point into the robot frame at the point's capture
+      int pose = pointCamera[i] * 4;
+      double frameCos = framePoses[pose + 2];
+      double frameSin = framePoses[pose + 3];
+      double fx = pointField[i * 3] - framePoses[pose];
+      double fy = pointField[i * 3 + 1] - framePoses[pose + 1];
+      double rx = frameCos * fx + frameSin * fy;
+      double ry = -frameSin * fx + frameCos * fy;
+      double rz = pointField[i * 3 + 2];
+
+      // Robot frame into the camera frame
+      double[] c = cameraParams;
+      int base = pointCamera[i] * 12;
+      double dx = rx - c[base];
+      double dy = ry - c[base + 1];
+      double dz = rz - c[base + 2];
+      double cx = c[base + 3] * dx + c[base + 4] * dy + c[base + 5] * dz;
+      double cy = c[base + 6] * dx + c[base + 7] * dy + c[base + 8] * dz;
+      double cz = c[base + 9] * dx + c[base + 10] * dy + c[base + 11] * dz;
+
+      if (!cameraIntrinsics[pointCamera[i]].project(cx, cy, cz, projected)) {
+        return Double.NaN;
+      }
+
+      double du = projected[0] - pointPixel[i * 2];
+      double dv = projected[1] - pointPixel[i * 2 + 1];
+      out[i * 2] = du;
+      out[i * 2 + 1] = dv;
+      cost += du * du + dv * dv;
+    }
+
+    return cost;
+  }
+}
@@ -0,0 +1,230 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import frc.robot.helpers.LogTable;
+import frc.robot.helpers.LoggableInputs;
+import java.util.Arrays;
+import java.util.List;
+import org.photonvision.targeting.TargetCorner;
+
+/**
+ * Reusable buffer of apriltag detections for a camera update. Corners and IDs are stored in
+ * primitive arrays that are cleared and refilled in place each loop, so once the buffer has grown
+ * to the largest frame seen it no longer allocates.
+ */
+public final class ObservationBuffer implements ObservationView, LoggableInputs {
+  /** Initial number of targets the buffer is sized for. */
+  private static final int INITIAL_TARGET_CAPACITY = 16;
+
+  /** Initial number of pose observations the buffer is sized for. */
+  private static final int INITIAL_OBSERVATION_CAPACITY = 8;
+
+  /** Corner coordinates packed as x0, y0, x1, y1, ... */
+  private double[] corners = new double[INITIAL_TARGET_CAPACITY * 4 * 2];
+
+  private int cornerCount;
+
+  private int[] ids = new int[INITIAL_TARGET_CAPACITY];
+  private int idCount;
+
+  private Pose3d[] tagPoses = new Pose3d[INITIAL_TARGET_CAPACITY];
+  private int tagPoseCount;
+
+  private PoseObservation[] observations = new PoseObservation[INITIAL_OBSERVATION_CAPACITY];
+  private int observationCount;
+
+  /** Observation fields unpacked for logging, reused every loop. */
+  private Pose3d[] logPoses = new Pose3d[INITIAL_OBSERVATION_CAPACITY];
+
+  private double[] logTimestamps = new double[INITIAL_OBSERVATION_CAPACITY];
+
+  /** Resets all counts without releasing the backing arrays. */
+  public void clear() {
+    cornerCount = 0;
+    idCount = 0;
+    // Drop references so old frames can be collected, the arrays themselves are kept
+    Arrays.fill(tagPoses, 0, tagPoseCount, null);
+    Arrays.fill(observations, 0, observationCount, null);
+    tagPoseCount = 0;
+    observationCount = 0;
+  }
+
+  /**
+   * Adds the detected corners of a target.
+   *
+   * @param targetCorners The corners reported by PhotonVision
+   */
+  public void addCorners(List<TargetCorner> targetCorners) {
+    int size = targetCorners.size();
+    if ((cornerCount + size) * 2 > corners.length) {
+      corners = Arrays.copyOf(corners, Math.max(corners.length * 2, (cornerCount + size) * 2));
+    }
+
+    for (int i = 0; i < size; i++) {
+      TargetCorner corner = targetCorners.get(i);
+      corners[cornerCount * 2] = corner.x;
+      corners[cornerCount * 2 + 1] = corner.y;
+      cornerCount++;
+    }
+  }
+
+  /**
+   * Adds a fiducial ID.
+   *
+   * @param id The fiducial ID
+   */
+  public void addId(int id) {
+    if (idCount == ids.length) {
+      ids = Arrays.copyOf(ids, ids.length * 2);
+    }
+    ids[idCount++] = id;
+  }
+
+  /**
+   * Adds the field pose of a detected tag.
+   *
+   * @param tagPose The pose of the tag on the field
+   */
+  public void addTagPose(Pose3d tagPose) {
+    if (tagPoseCount == tagPoses.length) {
+      tagPoses = Arrays.copyOf(tagPoses, tagPoses.length * 2);
+    }
+    tagPoses[tagPoseCount++] = tagPose;
+  }
+
+  /**
+   * Adds a robot pose observation.
+   *
+   * @param observation The observation
+   */
+  public void addObservation(PoseObservation observation) {
+    if (observationCount == observations.length) {
+      observations = Arrays.copyOf(observations, observations.length * 2);
+    }
+    observations[observationCount++] = observation;
+  }
+
+  /**
+   * Appends the contents of another buffer to this one.
+   *
+   * @param other The buffer to append
+   */
+  public void addAll(ObservationBuffer other) {
+    if ((cornerCount + other.cornerCount) * 2 > corners.length) {
+      corners =
+          Arrays.copyOf(
+              corners, Math.max(corners.length * 2, (cornerCount + other.cornerCount) * 2));
+    }
+    if (idCount + other.idCount > ids.length) {
+      ids = Arrays.copyOf(ids, Math.max(ids.length * 2, idCount + other.idCount));
+    }
+    if (tagPoseCount + other.tagPoseCount > tagPoses.length) {
+      tagPoses =
+          Arrays.copyOf(tagPoses, Math.max(tagPoses.length * 2, tagPoseCount + other.tagPoseCount));
+    }
+    if (observationCount + other.observationCount > observations.length) {
+      observations =
+          Arrays.copyOf(
+              observations,
+              Math.max(observations.length * 2, observationCount + other.observationCount));
+    }
+
+    System.arraycopy(other.corners, 0, corners, cornerCount * 2, other.cornerCount * 2);
+    System.arraycopy(other.ids, 0, ids, idCount, other.idCount);
+    System.arraycopy(other.tagPoses, 0, tagPoses, tagPoseCount, other.tagPoseCount);
+    System.arraycopy(
+        other.observations, 0, observations, observationCount, other.observationCount);
+    cornerCount += other.cornerCount;
+    idCount += other.idCount;
+    tagPoseCount += other.tagPoseCount;
+    observationCount += other.observationCount;
+  }
+
+  @Override
+  public void toLog(LogTable table) {
+    if (logPoses.length < observationCount) {
+      logPoses = new Pose3d[observations.length];
+      logTimestamps = new double[observations.length];
+    }
+    for (int i = 0; i < observationCount; i++) {
+      logPoses[i] = observations[i].robotPose();
+      logTimestamps[i] = observations[i].timestampSeconds();
+    }
+
+    table.put("Corners", corners, cornerCount * 2);
+    table.put("Ids", ids, idCount);
+    table.put("TagPoses", Pose3d.struct, tagPoses, tagPoseCount);
+    table.put("Poses", Pose3d.struct, logPoses, observationCount);
+    table.put("Timestamps", logTimestamps, observationCount);
+    Arrays.fill(logPoses, 0, observationCount, null);
+  }
+
+  /** @return The number of corners in the buffer */
+  @Override
+  public int getCornerCount() {
+    return cornerCount;
+  }
+
+  /**
+   * @param index The corner index
+   * @return The x pixel coordinate of the corner
+   */
+  @Override
+  public double getCornerX(int index) {
+    return corners[index * 2];
+  }
+
+  /**
+   * @param index The corner index
+   * @return The y pixel coordinate of the corner
+   */
+  @Override
+  public double getCornerY(int index) {
+    return corners[index * 2 + 1];
+  }
+
+  /** @return The number of IDs in the buffer */
+  @Override
+  public int getIdCount() {
+    return idCount;
+  }
+
+  /**
+   * @param index The ID index
+   * @return The fiducial ID
+   */
+  @Override
+  public int getId(int index) {
+    return ids[index];
+  }
+
+  /** @return The number of tag poses in the buffer */
+  @Override
+  public int getTagPoseCount() {
+    return tagPoseCount;
+  }
+
+  /**
+   * @param index The tag pose index
+   * @return The field pose of the tag
+   */
+  @Override
+  public Pose3d getTagPose(int index) {
+    return tagPoses[index];
+  }
+
+  /** @return The number of pose observations in the buffer */
+  @Override
+  public int getObservationCount() {
+    return observationCount;
+  }
+
+  /**
+   * @param index The observation index
+   * @return The pose observation
+   */
+  @Override
+  public PoseObservation getObservation(int index) {
+    return observations[index];
+  }
+}
@@ -0,0 +1,48 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Pose3d;
+
+/** Read-only view of apriltag detections, indexed like {@link ObservationBuffer}. */
+public interface ObservationView {
+  /** @return The number of corners */
+  int getCornerCount();
+
+  /**
+   * @param index The corner index
+   * @return The x pixel coordinate of the corner
+   */
+  double getCornerX(int index);
+
+  /**
+   * @param index The corner index
+   * @return The y pixel coordinate of the corner
+   */
+  double getCornerY(int index);
+
+  /** @return The number of IDs */
+  int getIdCount();
+
+  /**
+   * @param index The ID index
+   * @return The fiducial ID
+   */
+  int getId(int index);
+
+  /** @return The number of tag poses */
+  int getTagPoseCount();
+
+  /**
+   * @param index The tag pose index
+   * @return The field pose of the tag
+   */
+  Pose3d getTagPose(int index);
+
+  /** @return The number of pose observations */
+  int getObservationCount();
+
+  /**
+   * @param index The observation index
+   * @return The pose observation
+   */
+  PoseObservation getObservation(int index);
+}
@@ -0,0 +1,31 @@
+package frc.robot.subsystems.vision;
+
+/** Why an apriltag target or pose observation was not used. */
+public enum RejectionReason {
+  /** The tag is not in the field layout. */
+  UNKNOWN_ID,
+
+  /** The single-tag pose ambiguity is too high. */
+  AMBIGUITY,
+
+  /** The tag is too far away for a single-tag estimate. */
+  DISTANCE,
+
+  /** The estimated robot pose is outside the field. */
+  OUT_OF_FIELD,
+
+  /** The estimated robot pose is above or below the floor. */
+  OFF_FLOOR,
+
+  /** The estimated robot pose is pitched or rolled. */
+  TILTED,
+
+  /** The estimated robot pose is further from odometry than the robot could have moved. */
+  IMPOSSIBLE_JUMP,
+
+  /** The estimated robot pose disagrees with the consensus of recent poses. */
+  OUTLIER,
+
+  /** The scorer judged the observation unusable. */
+  SCORE
+}
@@ -0,0 +1,82 @@
+package frc.robot.subsystems.vision;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.photonvision.targeting.PhotonPipelineResult;
+
+/**
+ * Caps the backlog of pipeline results a camera hands to pose estimation. After a stall a camera
+ * can have many unread results. Only the newest few still matter to the estimator, and solving the
+ * rest only delays the fresh ones. The throttle keeps the newest results, drops results older than
+ * a staleness limit, and coalesces results that share a capture time into the one with the most
+ * targets. While shedding load it keeps only the newest result.
+ */
+final class ResultThrottle {
+  private final int maxResults;
+  private final double maxAge;
+  private final List<PhotonPipelineResult> kept = new ArrayList<>();
+  private long droppedCount = 0;
+
+  /**
+   * Creates a new throttle.
+   *
+   * @param maxResults The maximum number of results kept per update
+   * @param maxAge Results captured longer ago than this in seconds are dropped
+   */
+  ResultThrottle(int maxResults, double maxAge) {
+    this.maxResults = maxResults;
+    this.maxAge = maxAge;
+  }
+
+  /**
+   * Throttles one update's results.
+   *
+   * @param results The unread results, oldest first
+   * @param timestamp The current time in seconds
+   * @param shedding True to keep only the newest result
+   * @return The results to process, oldest first. The list is reused by the next call.
+   */
+  List<PhotonPipelineResult> apply(
+      List<PhotonPipelineResult> results, double timestamp, boolean shedding) {
+    kept.clear();
+    int limit = shedding ? 1 : maxResults;
+
+    // Walk from the newest result, everything before a stale result is stale too
+    for (int i = results.size() - 1; i >= 0; i--) {
+      PhotonPipelineResult result = results.get(i);
+      double captured = result.getTimestampSeconds();
+      if (timestamp - captured > maxAge) {
+        break;
+      }
+
+      int last = kept.size() - 1;
+      if (last >= 0 && kept.get(last).getTimestampSeconds() == captured) {
+        // The same frame delivered twice, keep whichever copy saw more
+        if (result.getTargets().size() > kept.get(last).getTargets().size()) {
+          kept.set(last, result);
+        }
+        continue;
+      }
+
+      if (kept.size() == limit) {
+        break;
+      }
+      kept.add(result);
+    }
+
+    droppedCount += results.size() - kept.size();
+
+    // Back to oldest first
+    for (int i = 0, j = kept.size() - 1; i < j; i++, j--) {
+      PhotonPipelineResult swap = kept.get(i);
+      kept.set(i, kept.get(j));
+      kept.set(j, swap);
+    }
+    return kept;
+  }
+
+  /** @return The number of results dropped or coalesced since startup */
+  long getDroppedCount() {
+    return droppedCount;
+  }
+}
@@ -0,0 +1,232 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import frc.robot.helpers.TagPoseTable;
+
+/**
+ * Precomputed prediction of which tags one camera can see from any robot pose. The field is split
+ * into a grid of cells and the heading into bins, and each cell and bin stores two bitmasks of tag
+ * IDs. A tag is expected if it is in view from anywhere in the cell and bin, and possible if it is
+ * in view from somewhere in them. A lookup is two array reads, so it can run for every frame.
+ */
+public final class TagVisibilityIndex {
+  /** Parameters of the visibility model. */
+  public record Settings(
+      double cellSize,
+      int headingBins,
+      double fieldLength,
+      double fieldWidth,
+      double horizontalFov,
+      double verticalFov,
+      double maxDistance,
+      double maxViewAngle) {}
+
+  private final double cellSize;
+  private final int headingBins;
+  private final int columns;
+  private final int rows;
+  private final long[] expected;
+  private final long[] possible;
+
+  /**
+   * Builds the index for one camera. This projects every tag from every cell and bin, so build it
+   * once at startup rather than while cameras are being read.
+   *
+   * @param tags The tag poses, every ID must be below 64
+   * @param robotToCamera The camera mounting transform
+   * @param settings The visibility model
+   */
+  public TagVisibilityIndex(TagPoseTable tags, Transform3d robotToCamera, Settings settings) {
+    if (tags.size() > Long.SIZE) {
+      throw new IllegalArgumentException("Tag IDs must fit in a 64 bit mask");
+    }
+
+    cellSize = settings.cellSize();
+    headingBins = settings.headingBins();
+    columns = (int) Math.ceil(settings.fieldLength() / cellSize);
+    rows = (int) Math.ceil(settings.fieldWidth() / cellSize);
+    expected = new long[columns * rows * headingBins];
+    possible = new long[columns * rows * headingBins];
+
+    double binWidth = 2 * Math.PI / headingBins;
+    double halfDiagonal = cellSize * Math.sqrt(0.5);
+
+    // Everything below is primitive math, the build touches millions of cell and tag pairs
+    int[] ids = new int[tags.size()];
+    double[] tagXs = new double[tags.size()];
+    double[] tagYs = new double[tags.size()];
+    double[] tagZs = new double[tags.size()];
+    double[] tagYaws = new double[tags.size()];
+    int tagCount = 0;
+    for (int id = 0; id < tags.size(); id++) {
+      if (!tags.contains(id)) {
+        continue;
+      }
+      Pose3d tag = tags.getPose(id);
+      ids[tagCount] = id;
+      tagXs[tagCount] = tag.getX();
+      tagYs[tagCount] = tag.getY();
+      tagZs[tagCount] = tag.getZ();
+      tagYaws[tagCount] = tag.getRotation().getZ();
+      tagCount++;
+    }
+
+    // Takes robot frame vectors into the camera frame
+    double[] m = getInverseRotationMatrix(robotToCamera.getRotation());
+    Translation3d cameraOffset = robotToCamera.getTranslation();
+
+    for (int bin = 0; bin < headingBins; bin++) {
+      double heading = -Math.PI + (bin + 0.5) * binWidth;
+      double cos = Math.cos(heading);
+      double sin = Math.sin(heading);
+      double offsetX = cameraOffset.getX() * cos - cameraOffset.getY() * sin;
+      double offsetY = cameraOffset.getX() * sin + cameraOffset.getY() * cos;
+
+      for (int column = 0; column < columns; column++) {
+        for (int row = 0; row < rows; row++) {
+          double cameraX = (column + 0.5) * cellSize + offsetX;
+          double cameraY = (row + 0.5) * cellSize + offsetY;
+          int index = getIndex(column, row, bin);
+
+          for (int t = 0; t < tagCount; t++) {
+            // Tag relative to the camera, first in the robot frame and then in the camera frame
+            double fieldDx = tagXs[t] - cameraX;
+            double fieldDy = tagYs[t] - cameraY;
+            double robotX = fieldDx * cos + fieldDy * sin;
+            double robotY = -fieldDx * sin + fieldDy * cos;
+            double robotZ = tagZs[t] - cameraOffset.getZ();
+            double forward = m[0] * robotX + m[1] * robotY + m[2] * robotZ;
+            if (forward <= 0) {
+              continue;
+            }
+            double left = m[3] * robotX + m[4] * robotY + m[5] * robotZ;
+            double up = m[6] * robotX + m[7] * robotY + m[8] * robotZ;
+
+            double distance = Math.sqrt(forward * forward + left * left + up * up);
+            double horizontal = Math.abs(Math.atan2(left, forward));
+            double vertical = Math.abs(Math.atan2(up, forward));
+
+            // Tags face along their +X axis, steep views make them too thin to decode
+            double view =
+                Math.abs(MathUtil.angleModulus(Math.atan2(-fieldDy, -fieldDx) - tagYaws[t]));
+
+            // Position uncertainty matters more for near tags
+            double positionAngle = Math.atan2(halfDiagonal, distance);
+
+            if (isVisible(
+                distance - halfDiagonal,
+                horizontal,
+                vertical,
+                view,
+                -binWidth / 2 - positionAngle,
+                settings)) {
+              expected[index] |= 1L << ids[t];
+            }
+            if (isVisible(
+                distance + halfDiagonal,
+                horizontal,
+                vertical,
+                view,
+                binWidth / 2 + positionAngle,
+                settings)) {
+              possible[index] |= 1L << ids[t];
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks a tag against the camera limits, with every angular limit widened by a margin. A
+   * negative margin narrows them instead, for a check that must hold across the whole cell and bin.
+   *
+   * @param distance The distance to the tag adjusted for position uncertainty in meters
+   * @param horizontal The horizontal angle off the camera axis in radians
+   * @param vertical The vertical angle off the camera axis in radians
+   * @param view The angle between the tag's facing and the direction to the camera in radians
+   * @param margin The angle margin in radians
+   */
+  private static boolean isVisible(
+      double distance,
+      double horizontal,
+      double vertical,
+      double view,
+      double margin,
+      Settings settings) {
+    return distance <= settings.maxDistance()
+        && horizontal <= settings.horizontalFov() / 2 + margin
+        && vertical <= settings.verticalFov() / 2 + margin
+        && view <= settings.maxViewAngle() + margin;
+  }
+
+  /**
+   * Computes the matrix that takes robot frame vectors into the camera frame.
+   *
+   * @return The row-major 3x3 matrix
+   */
+  private static double[] getInverseRotationMatrix(Rotation3d rotation) {
+    double w = rotation.getQuaternion().getW();
+    double x = rotation.getQuaternion().getX();
+    double y = rotation.getQuaternion().getY();
+    double z = rotation.getQuaternion().getZ();
+
+    // Transpose of the rotation matrix of the quaternion
+    return new double[] {
+      1 - 2 * (y * y + z * z), 2 * (x * y + w * z), 2 * (x * z - w * y),
+      2 * (x * y - w * z), 1 - 2 * (x * x + z * z), 2 * (y * z + w * x),
+      2 * (x * z + w * y), 2 * (y * z - w * x), 1 - 2 * (x * x + y * y)
+    };
+  }
+
+  private int getIndex(int column, int row, int bin) {
+    return (column * rows + row) * headingBins + bin;
+  }
+
+  private int getIndex(double x, double y, double heading) {
+    int column = MathUtil.clamp((int) Math.floor(x / cellSize), 0, columns - 1);
+    int row = MathUtil.clamp((int) Math.floor(y / cellSize), 0, rows - 1);
+    int bin =
+        (int) Math.floor((MathUtil.angleModulus(heading) + Math.PI) / (2 * Math.PI) * headingBins);
+    return getIndex(column, row, Math.min(bin, headingBins - 1));
+  }
+
+  /**
+   * Gets the tags that should be visible from anywhere near a robot pose.
+   *
+   * @param x The robot x position in meters
+   * @param y The robot y position in meters
+   * @param heading The robot heading in radians
+   * @return A mask with bit n set if tag n is expected
+   */
+  public long getExpected(double x, double y, double heading) {
+    return expected[getIndex(x, y, heading)];
+  }
+
+  /**
+   * Gets the tags that could be visible from somewhere near a robot pose.
+   *
+   * @param x The robot x position in meters
+   * @param y The robot y position in meters
+   * @param heading The robot heading in radians
+   * @return A mask with bit n set if tag n is possible
+   */
+  public long getPossible(double x, double y, double heading) {
+    return possible[getIndex(x, y, heading)];
+  }
+
+  /**
+   * Checks whether a mask contains a tag.
+   *
+   * @param mask The mask
+   * @param id The tag ID
+   * @return True if the tag's bit is set
+   */
+  public static boolean contains(long mask, int id) {
+    return id >= 0 && id < Long.SIZE && (mask & (1L << id)) != 0;
+  }
+}
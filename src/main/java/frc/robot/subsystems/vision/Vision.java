@@ -1,73 +1,277 @@
 package frc.robot.subsystems.vision;
 
-import edu.wpi.first.math.geometry.Pose3d;
-import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.filter.Debouncer;
+import edu.wpi.first.math.filter.Debouncer.DebounceType;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.wpilibj.Alert;
 import edu.wpi.first.wpilibj.Alert.AlertType;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants.ApriltagConstants;
+import frc.robot.Constants.FieldConstants;
+import frc.robot.helpers.LogTable;
+import frc.robot.helpers.LoggableInputs;
 import frc.robot.helpers.PhotonConfig;
+import frc.robot.helpers.SampleRing;
+import frc.robot.subsystems.OdometryThread;
 import frc.robot.subsystems.Swerve;
+import frc.robot.subsystems.vision.scoring.DistanceScorer;
+import frc.robot.subsystems.vision.scoring.ObservationScorer;
+import frc.robot.subsystems.vision.scoring.QualityScorer;
+import frc.robot.subsystems.vision.scoring.ScorerReplay;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
 
 public class Vision extends SubsystemBase {
   private static Vision instance;
 
-  public static class AprilTagIOInputs {
-      public boolean connected;
-      public Translation2d[] validCorners;
-      public Translation2d[] rejectedCorners;
-      public int[] validIds;
-      public int[] rejectedIds;
-      public PoseObservation[] validPoseObservations;
-      public PoseObservation[] rejectedPoseObservations;
-      public Pose3d[] validPoses;
-      public Pose3d[] rejectedPoses;
-      public Pose3d[] validAprilTagPoses;
-      public Pose3d[] rejectedAprilTagPoses;
-
-      // Default constructor with empty arrays
-      public AprilTagIOInputs() {
-          this.connected = false;
-          this.validCorners = new Translation2d[0];
-          this.rejectedCorners = new Translation2d[0];
-          this.validIds = new int[0];
-          this.rejectedIds = new int[0];
-          this.validPoseObservations = new PoseObservation[0];
-          this.rejectedPoseObservations = new PoseObservation[0];
-          this.validPoses = new Pose3d[0];
-          this.rejectedPoses = new Pose3d[0];
-          this.validAprilTagPoses = new Pose3d[0];
-          this.rejectedAprilTagPoses = new Pose3d[0];
+  /**
+   * Inputs read from a single apriltag camera. The buffers are allocated once and refilled in place
+   * by {@link ApriltagIO#updateInputs}, so the same instance should be reused every loop.
+   */
+  public static class AprilTagIOInputs implements LoggableInputs {
+      public boolean connected = false;
+      public final ObservationBuffer valid = new ObservationBuffer();
+      /** Only filled on updates sampled by {@link VisionDiagnostics}, empty otherwise. */
+      public final ObservationBuffer rejected = new ObservationBuffer();
+      public CameraFrame[] frames = new CameraFrame[4];
+      public int frameCount = 0;
+
+      /** True if the camera has missed every tag it should see for a while, likely blocked. */
+      public boolean blind = false;
+
+      /** Number of unread pipeline results this update, before throttling. */
+      public int unreadCount = 0;
+
+      /** Number of pipeline results processed this update. */
+      public int resultCount = 0;
+
+      /** Number of results dropped or coalesced by throttling since startup. */
+      public long throttledCount = 0;
+
+      /** Coprocessor latency of each processed result in milliseconds. */
+      public double[] resultLatencies = new double[4];
+
+      /** Incremented every update, so a reader can tell fresh inputs from ones it has seen. */
+      public long sequence = 0;
+
+      public void addResultLatency(double latencyMillis) {
+          if (resultCount == resultLatencies.length) {
+              resultLatencies = Arrays.copyOf(resultLatencies, resultLatencies.length * 2);
+          }
+          resultLatencies[resultCount++] = latencyMillis;
+      }
+
+      public void addFrame(CameraFrame frame) {
+          if (frameCount == frames.length) {
+              frames = Arrays.copyOf(frames, frames.length * 2);
+          }
+          frames[frameCount++] = frame;
+      }
+
+      public void clearFrames() {
+          Arrays.fill(frames, 0, frameCount, null);
+          frameCount = 0;
+      }
+
+      @Override
+      public void toLog(LogTable table) {
+          table.put("Connected", connected);
+          table.put("Blind", blind);
+          table.put("Valid", valid);
+          table.put("Rejected", rejected);
+          table.put("FrameCount", frameCount);
+          table.put("UnreadCount", unreadCount);
+          table.put("ThrottledCount", throttledCount);
+          table.put("ResultLatencies", resultLatencies, resultCount);
       }
   }
 
   public static record AprilTagCamera(
-      ApriltagIO io, AprilTagIOInputs inputs, PhotonConfig config, Alert disconnectedAlert) {}
+      CameraWorker worker, PhotonConfig config, Alert disconnectedAlert, Alert blindAlert) {}
 
   private final List<AprilTagCamera> aprilTagCameras = new ArrayList<>();
 
+  private final CameraIngestExecutor ingest;
+
+  /** Latest inputs of each camera, reused every loop. */
+
+  private final VisionSnapshot snapshot;
+
   private final Swerve swerve = Swerve.getInstance();
 
+  private final VisionFusion fusion =
+      new VisionFusion(
+          ApriltagConstants.VISION_FUSION_HORIZON,
+          new VisionGate(
+              ApriltagConstants.VISION_JUMP_TOLERANCE, ApriltagConstants.ODOMETRY_DRIFT_RATE),
+          new VisionConsensus(
+              ApriltagConstants.CONSENSUS_CAPACITY,
+              ApriltagConstants.CONSENSUS_WINDOW,
+              ApriltagConstants.CONSENSUS_DISTANCE,
+              ApriltagConstants.CONSENSUS_ANGLE,
+              ApriltagConstants.CONSENSUS_MIN_SAMPLES),
+          new VisionDiagnostics(
+              "Fusion", false, ApriltagConstants.VISION_DIAGNOSTICS_SAMPLE_PERIOD),
+          ApriltagConstants.VISION_GROUP_WINDOW);
+
+  private final ObservationScorer scorer = new QualityScorer();
+
+  /** The original distance scoring, compared against {@link #scorer} in simulation. */
+  private final ObservationScorer baselineScorer = new DistanceScorer();
+
+  private double lastScorerReplayTime = Double.NEGATIVE_INFINITY;
+
+  private final JointPoseEstimator jointEstimator =
+      new JointPoseEstimator(
+          ApriltagConstants.TAG_POSES, ApriltagConstants.JOINT_SOLVE_SYNC_WINDOW, scorer);
+
+  /** Latest robot angular velocity, read by the ingest threads when scoring observations. */
+  private volatile double angularVelocity = 0.0;
+
   private boolean hasReceivedGlobalPose = false;
 
+  private double lastPeriodicTime = Double.NaN;
+
+  private final double[] odometrySample =
+      new double[swerve.getOdometry().getSamples().getWidth() + 1];
+  private long odometryCursor = 0;
+  private int odometryResets = 0;
+
+  private boolean loadShedding = false;
+
+  /** Holds load shedding on until the loop has stayed on budget, so it does not flap. */
+  private final Debouncer sheddingDebouncer =
+      new Debouncer(ApriltagConstants.CAMERA_DEBOUNCE_TIME, DebounceType.kFalling);
+
+  private final LogTable logTable = LogTable.getRoot().getSubtable("Vision");
+
+  private final VisionPublisher publisher =
+      new VisionPublisher(ApriltagConstants.VISION_PUBLISH_PERIOD);
+
+  /** Camera configurations with calibrated transforms from the extrinsics file where present. */
+  private final PhotonConfig[] cameraConfigs;
+
+  /** The running extrinsic calibration, or null if none is running. */
+  private ExtrinsicCalibration calibration;
+
   private Vision() {
-    for (PhotonConfig config : ApriltagConstants.PHOTON_CAMERAS) {
-      ApriltagIO io = new ApriltagIO(config);
+    // Read here rather than in a static initializer so loading the constants never touches files
+    cameraConfigs = CameraCalibration.apply(ApriltagConstants.PHOTON_CAMERAS);
+
+    List<ApriltagIO> ios = new ArrayList<>();
+    List<PhotonConfig> configs = new ArrayList<>();
+    if (RobotBase.isReal()) {
+      Path logDirectory = ApriltagIOPhoton.getRecordingDirectory();
+      for (PhotonConfig config : cameraConfigs) {
+        ios.add(new ApriltagIOPhoton(config, scorer, () -> angularVelocity, logDirectory));
+        configs.add(config);
+      }
+    } else if (!openReplay(ios, configs)) {
+      ApriltagIOSim.Settings simCamera =
+          new ApriltagIOSim.Settings(
+              ApriltagConstants.SIM_CAMERA_WIDTH,
+              ApriltagConstants.SIM_CAMERA_HEIGHT,
+              ApriltagConstants.SIM_CAMERA_DIAGONAL_FOV,
+              ApriltagConstants.SIM_CAMERA_CORNER_ERROR,
+              ApriltagConstants.SIM_CAMERA_CORNER_ERROR_STD_DEV,
+              ApriltagConstants.SIM_CAMERA_FPS,
+              ApriltagConstants.SIM_CAMERA_LATENCY,
+              ApriltagConstants.SIM_CAMERA_LATENCY_STD_DEV,
+              ApriltagConstants.SIM_CAMERA_VIDEO_STREAMS);
+      for (PhotonConfig config : cameraConfigs) {
+        ios.add(new ApriltagIOSim(config, scorer, () -> angularVelocity, simCamera));
+        configs.add(config);
+      }
+    }
+
+    // Built here so the ingest threads never stall on it, cameras mounted the same way share one
+    TagVisibilityIndex.Settings visibilitySettings =
+        new TagVisibilityIndex.Settings(
+            ApriltagConstants.TAG_VISIBILITY_CELL_SIZE,
+            ApriltagConstants.TAG_VISIBILITY_HEADING_BINS,
+            FieldConstants.FIELD_LENGTH_METERS,
+            FieldConstants.FIELD_WIDTH_METERS,
+            ApriltagConstants.CAMERA_HORIZONTAL_FOV,
+            ApriltagConstants.CAMERA_VERTICAL_FOV,
+            ApriltagConstants.TAG_VISIBILITY_MAX_DISTANCE,
+            ApriltagConstants.TAG_VISIBILITY_MAX_VIEW_ANGLE);
+    Map<Transform3d, TagVisibilityIndex> visibility = new HashMap<>();
+    for (int i = 0; i < ios.size(); i++) {
+      ios.get(i)
+          .setVisibilityIndex(
+              visibility.computeIfAbsent(
+                  configs.get(i).transform(),
+                  transform ->
+                      new TagVisibilityIndex(
+                          ApriltagConstants.TAG_POSES, transform, visibilitySettings)));
+    }
+
+    ingest = new CameraIngestExecutor(ios, configs);
+    snapshot = new VisionSnapshot();
 
+    for (CameraWorker worker : ingest.getWorkers()) {
+      PhotonConfig config = worker.getConfig();
       Alert disconnectedAlert =
           new Alert(
               "AprilTag Camera Disconnected",
               "The AprilTag camera " + config.name() + " is disconnected.",
               AlertType.kWarning);
 
-      aprilTagCameras.add(new AprilTagCamera(io, new AprilTagIOInputs(), config, disconnectedAlert));
+      Alert blindAlert =
+          new Alert(
+              "AprilTag Camera Blocked",
+              "The AprilTag camera " + config.name() + " is not seeing the tags it should.",
+              AlertType.kWarning);
+
+      aprilTagCameras.add(new AprilTagCamera(worker, config, disconnectedAlert, blindAlert));
     }
   }
   
+  /**
+   * Opens recorded vision logs for replay in simulation if a replay directory is set.
+   *
+   * @return True if at least one camera log was opened
+   */
+  private boolean openReplay(List<ApriltagIO> ios, List<PhotonConfig> configs) {
+    String directory = System.getenv(ApriltagConstants.VISION_REPLAY_ENV);
+    if (directory == null || directory.isEmpty()) {
+      return false;
+    }
+
+    try {
+      List<VisionReplay.ReplayCamera> cameras =
+          VisionReplay.open(
+              Path.of(directory),
+              cameraConfigs,
+              scorer,
+              () -> angularVelocity,
+              Timer::getFPGATimestamp);
+      for (VisionReplay.ReplayCamera camera : cameras) {
+        ios.add(camera.io());
+        configs.add(camera.config());
+      }
+      return !cameras.isEmpty();
+    } catch (IOException e) {
+      DriverStation.reportError("Could not open vision replay: " + e.getMessage(), false);
+      return false;
+    }
+  }
+
   /**
    * Returns the singleton instance of the Vision subsystem.
    * @return the singleton instance
@@ -81,55 +285,208 @@ public class Vision extends SubsystemBase {
 
   @Override
   public void periodic() {
-    List<Translation2d> validCorners = new ArrayList<>();
-    List<Translation2d> rejectedCorners = new ArrayList<>();
+    double now = Timer.getFPGATimestamp();
 
-    List<Integer> validIds = new ArrayList<>();
-    List<Integer> rejectedIds = new ArrayList<>();
+    // A late loop means the robot is over budget, shed vision work until it catches up
+    boolean shedding =
+        sheddingDebouncer.calculate(now - lastPeriodicTime > ApriltagConstants.VISION_LOOP_BUDGET);
+    lastPeriodicTime = now;
+    if (shedding != loadShedding) {
+      loadShedding = shedding;
+      ingest.setLoadShedding(shedding);
+    }
 
-    List<PoseObservation> validPoseObservations = new ArrayList<>();
-    List<PoseObservation> rejectedPoseObservations = new ArrayList<>();
+    angularVelocity = swerve.getState().getOmega();
 
-    List<Pose3d> validPoses = new ArrayList<>();
-    List<Pose3d> rejectedPoses = new ArrayList<>();
+    // Tag visibility predictions and single-tag solves need a real estimate, not the startup guess
+    if (hasReceivedGlobalPose) {
+      ingest.setRobotPose(now, swerve.getPose());
+    }
 
-    List<Pose3d> validAprilTagPoses = new ArrayList<>();
-    List<Pose3d> rejectedAprilTagPoses = new ArrayList<>();
+    snapshot.begin();
+    for (int i = 0; i < aprilTagCameras.size(); i++) {
+      AprilTagCamera cam = aprilTagCameras.get(i);
 
-    for (AprilTagCamera cam : aprilTagCameras) {
-      cam.io.updateInputs(cam.inputs);
+      // Cameras are polled on their ingest threads faster than this loop, log and show every poll
+      AprilTagIOInputs polled;
+      while ((polled = cam.worker.pollInputs()) != null) {
+        logTable.put(cam.config.name(), polled);
+        snapshot.add(polled);
+      }
+      AprilTagIOInputs inputs = cam.worker.getLatestInputs();
 
-      cam.disconnectedAlert.set(!cam.inputs.connected);
-      SmartDashboard.putBoolean(cam.config.name() + " Connected", cam.inputs.connected);
+      cam.disconnectedAlert.set(!inputs.connected);
+      cam.blindAlert.set(inputs.connected && inputs.blind);
+      SmartDashboard.putBoolean(cam.config.name() + " Connected", inputs.connected);
 
-      validCorners.addAll(Arrays.asList(cam.inputs.validCorners));
-      rejectedCorners.addAll(Arrays.asList(cam.inputs.rejectedCorners));
+      CameraMetrics metrics = cam.worker.getMetrics();
+      metrics.recordFusion(inputs, now);
+      metrics.publish(now);
+    }
+    snapshot.end();
 
-      validIds.addAll(Arrays.stream(cam.inputs.validIds).boxed().toList());
-      rejectedIds.addAll(Arrays.stream(cam.inputs.rejectedIds).boxed().toList());
+    // Every odometry sample since the last loop, so latency compensation sees the full rate
+    SampleRing odometry = swerve.getOdometry().getSamples();
+    odometryCursor = Math.max(odometryCursor, odometry.getOldestIndex());
+    for (; odometryCursor < odometry.getWrittenCount(); odometryCursor++) {
+      if (odometry.get(odometryCursor, odometrySample)) {
+        int resets = (int) odometrySample[1 + OdometryThread.RESETS];
+        if (resets != odometryResets) {
+          fusion.resetOdometry(odometrySample[0]);
+          odometryResets = resets;
+        }
+        fusion.recordOdometry(
+            odometrySample[0],
+            odometrySample[1 + OdometryThread.WHEEL_X],
+            odometrySample[1 + OdometryThread.WHEEL_Y],
+            odometrySample[1 + OdometryThread.WHEEL_THETA]);
+      }
+    }
+    if (calibration != null) {
+      calibration.recordYaw(now, swerve.getSwerveDrive().getYaw().getRadians());
+    }
 
-      validPoseObservations.addAll(Arrays.asList(cam.inputs.validPoseObservations));
-      rejectedPoseObservations.addAll(Arrays.asList(cam.inputs.rejectedPoseObservations));
+    PoseObservation observation;
+    while ((observation = ingest.pollObservation()) != null) {
+      fusion.add(observation);
+    }
 
-      validPoses.addAll(Arrays.asList(cam.inputs.validPoses));
-      rejectedPoses.addAll(Arrays.asList(cam.inputs.rejectedPoses));
+    CameraFrame frame;
+    while ((frame = ingest.pollFrame()) != null) {
+      jointEstimator.addFrame(frame);
+      if (calibration != null) {
+        calibration.addFrame(frame);
+      }
+    }
 
-      validAprilTagPoses.addAll(Arrays.asList(cam.inputs.validAprilTagPoses));
-      rejectedAprilTagPoses.addAll(Arrays.asList(cam.inputs.rejectedAprilTagPoses));
+    // The joint solve is seeded from the current estimate, so wait for a first global pose. It is
+    // the most expensive step on this thread, so it is skipped while shedding load.
+    if (hasReceivedGlobalPose && !loadShedding) {
+      PoseObservation joint =
+          jointEstimator.solve(swerve.getPose(), angularVelocity, fusion.getOdometryHistory());
+      if (joint != null) {
+        fusion.addJoint(joint, jointEstimator);
+      }
+    }
 
-      for (PoseObservation observation : cam.inputs.validPoseObservations) {
-        swerve
-            .getSwerveDrive()
-            .addVisionMeasurement(
-                observation.robotPose().toPose2d(), observation.timestampSeconds(), observation.stdDevs());
+    if (fusion.fuse(swerve.getSwerveDrive()) > 0 && !hasReceivedGlobalPose) {
+      hasReceivedGlobalPose = true;
+    }
+    SmartDashboard.putNumber("Vision Dropped Observations", fusion.getDroppedCount());
+    SmartDashboard.putNumber("Vision Jump Rejections", fusion.getGatedCount());
+    SmartDashboard.putNumber("Vision Outlier Rejections", fusion.getOutlierCount());
+    SmartDashboard.putNumber("Vision Measurements", fusion.getMeasurementCount());
+    publisher.publish(now, swerve.getPose(), snapshot);
+  }
 
-        if (!hasReceivedGlobalPose) {
-          hasReceivedGlobalPose = true;
-        }
+  @Override
+  public void simulationPeriodic() {
+    Optional<Pose2d> truth = swerve.getSwerveDrive().getSimulationDriveTrainPose();
+    if (truth.isEmpty()) {
+      return;
+    }
+    ApriltagIOSim.updateSim(truth.get());
+
+    // Ground truth is only known in simulation, log how far the fused estimate is from it
+    double error = swerve.getPose().getTranslation().getDistance(truth.get().getTranslation());
+    double headingError =
+        Math.abs(swerve.getPose().getRotation().minus(truth.get().getRotation()).getRadians());
+    logTable.put("SimTranslationError", error);
+    logTable.put("SimHeadingError", headingError);
+    SmartDashboard.putNumber("Vision Sim Error", error);
+
+    // Compare how well each scorer's standard deviations match the true error
+    double now = Timer.getFPGATimestamp();
+    if (now - lastScorerReplayTime >= ApriltagConstants.SIM_SCORER_PERIOD) {
+      lastScorerReplayTime = now;
+      var samples = ApriltagIOSim.getRecorder().getSamples();
+      logScorerReplay("Quality", ScorerReplay.evaluate(scorer, samples));
+      logScorerReplay("Distance", ScorerReplay.evaluate(baselineScorer, samples));
+    }
+  }
+
+  private void logScorerReplay(String name, ScorerReplay.Result result) {
+    LogTable table = logTable.getSubtable("ScorerReplay").getSubtable(name);
+    table.put("Accepted", result.accepted());
+    table.put("Rejected", result.rejected());
+    table.put("NormalizedErrorX", result.normalizedErrorX());
+    table.put("NormalizedErrorY", result.normalizedErrorY());
+    table.put("NormalizedErrorTheta", result.normalizedErrorTheta());
+  }
+
+  /**
+   * Creates a pit command that calibrates the camera mounting transforms. Place the robot at
+   * {@link ApriltagConstants#CALIBRATION_POSE} first. The robot turns in place while tag corners
+   * are recorded, then each camera's transform is solved and written to {@link
+   * ApriltagConstants#EXTRINSICS_FILE}, which is loaded at the next startup.
+   *
+   * @return The command
+   */
+  public Command calibrateExtrinsics() {
+    return Commands.sequence(
+            Commands.runOnce(
+                () ->
+                    calibration =
+                        new ExtrinsicCalibration(
+                            cameraConfigs,
+                            ApriltagConstants.TAG_POSES,
+                            ApriltagConstants.CALIBRATION_POSE)),
+            Commands.run(
+                    () ->
+                        swerve
+                            .getSwerveDrive()
+                            .setChassisSpeeds(
+                                new ChassisSpeeds(
+                                    0, 0, ApriltagConstants.CALIBRATION_ANGULAR_VELOCITY)),
+                    swerve)
+                .withTimeout(ApriltagConstants.CALIBRATION_DURATION),
+            Commands.runOnce(
+                () -> swerve.getSwerveDrive().setChassisSpeeds(new ChassisSpeeds()), swerve),
+            Commands.runOnce(this::finishCalibration))
+        .finallyDo(() -> calibration = null)
+        .withName("Calibrate Camera Extrinsics");
+  }
+
+  /** Solves the recorded calibration and saves the cameras that solved well. */
+  private void finishCalibration() {
+    ExtrinsicCalibrator.Result[] results = calibration.solve();
+    Map<String, CameraCalibration.Extrinsics> solved = new TreeMap<>();
+    for (int i = 0; i < results.length; i++) {
+      String name = cameraConfigs[i].name();
+      ExtrinsicCalibrator.Result result = results[i];
+      if (result == null) {
+        DriverStation.reportWarning("Calibration of " + name + " failed, too few tags seen", false);
+        continue;
       }
+
+      SmartDashboard.putNumber("Calibration/" + name + " RMS Error", result.rmsError());
+      if (result.rmsError() > ApriltagConstants.CALIBRATION_MAX_ERROR) {
+        DriverStation.reportWarning(
+            "Calibration of " + name + " rejected, RMS error " + result.rmsError() + " px",
+            false);
+        continue;
+      }
+      solved.put(name, CameraCalibration.Extrinsics.of(result.robotToCamera(), result.rmsError()));
+    }
+
+    try {
+      CameraCalibration.write(solved);
+      DriverStation.reportWarning(
+          "Calibrated " + solved.size() + " cameras, restart robot code to apply", false);
+    } catch (IOException e) {
+      DriverStation.reportError("Could not save camera calibration: " + e.getMessage(), false);
     }
   }
 
+  /**
+   * Gets the combined detections of every camera. Only read it from the main robot thread.
+   *
+   * @return The snapshot, rebuilt each loop in which a camera poll carried results
+   */
+  public VisionSnapshot getSnapshot() {
+    return snapshot;
+  }
+
   public boolean hasReceivedGlobalPose() {
     return hasReceivedGlobalPose;
   }
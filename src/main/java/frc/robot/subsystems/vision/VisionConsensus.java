@@ -0,0 +1,195 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.MathUtil;
+import frc.robot.helpers.OdometryHistory;
+
+/**
+ * Rejects vision poses that disagree with the other recent poses from every camera. Each pose is
+ * stored as its offset from odometry at capture time, which good poses share no matter how the
+ * robot moved between them. Every stored offset is tried as a hypothesis, and the one that most
+ * other offsets agree with is the consensus. A new pose is accepted if it agrees with the
+ * consensus. Rejected poses are still stored, so if odometry really did jump, as after a
+ * collision, the new offset builds its own support and takes over within one window. Offsets are
+ * kept in a fixed ring of primitive arrays and a check never allocates. It compares every pair of
+ * stored offsets, so its cost grows with the square of the capacity, about a thousand comparisons
+ * for a full ring of 32.
+ */
+public final class VisionConsensus {
+  private final double windowSeconds;
+  private final double distance;
+  private final double angle;
+  private final int minSamples;
+
+  private final double[] timestamps;
+  private final double[] offsetXs;
+  private final double[] offsetYs;
+  private final double[] offsetThetas;
+
+  /** Index of the oldest sample. */
+  private int head = 0;
+
+  /** Number of stored samples. */
+  private int size = 0;
+
+  private final double[] odometry = new double[3];
+
+  private long rejectedCount = 0;
+
+  /**
+   * Creates a new consensus filter.
+   *
+   * @param capacity The maximum number of recent poses kept
+   * @param windowSeconds Poses older than this relative to the newest are forgotten
+   * @param distance Offsets closer than this agree in meters
+   * @param angle Offsets with headings closer than this agree in radians
+   * @param minSamples With fewer recent poses than this there is no consensus and every pose is
+   *     accepted
+   */
+  public VisionConsensus(
+      int capacity, double windowSeconds, double distance, double angle, int minSamples) {
+    this.windowSeconds = windowSeconds;
+    this.distance = distance;
+    this.angle = angle;
+    this.minSamples = minSamples;
+    timestamps = new double[capacity];
+    offsetXs = new double[capacity];
+    offsetYs = new double[capacity];
+    offsetThetas = new double[capacity];
+  }
+
+  /**
+   * Checks a vision pose against the consensus of recent poses and stores it.
+   *
+   * @param x The vision x position in meters
+   * @param y The vision y position in meters
+   * @param theta The vision heading in radians
+   * @param timestamp The capture time of the pose in seconds
+   * @param history The wheel odometry history
+   * @return True if the pose agrees with the consensus, or there is none yet
+   */
+  public boolean accept(
+      double x, double y, double theta, double timestamp, OdometryHistory history) {
+    if (!history.sample(timestamp, odometry)) {
+      return true;
+    }
+
+    double offsetX = x - odometry[0];
+    double offsetY = y - odometry[1];
+    double offsetTheta = MathUtil.angleModulus(theta - odometry[2]);
+
+    expire(timestamp);
+
+    boolean accepted = true;
+    if (size + 1 >= minSamples) {
+      int consensus = findConsensus(offsetX, offsetY, offsetTheta);
+      accepted =
+          consensus < 0
+              || agrees(
+                  offsetXs[consensus],
+                  offsetYs[consensus],
+                  offsetThetas[consensus],
+                  offsetX,
+                  offsetY,
+                  offsetTheta);
+    }
+
+    store(timestamp, offsetX, offsetY, offsetTheta);
+    if (!accepted) {
+      rejectedCount++;
+    }
+    return accepted;
+  }
+
+  /**
+   * Finds the stored offset that the most offsets agree with, counting the new one.
+   *
+   * @return The index of the consensus offset, or -1 if the new offset has the most support
+   */
+  private int findConsensus(double newX, double newY, double newTheta) {
+    int capacity = timestamps.length;
+
+    // Support of the new offset itself, it wins ties so a fresh cluster is not held back
+    int best = -1;
+    int bestSupport = 1;
+    for (int i = 0; i < size; i++) {
+      int index = (head + i) % capacity;
+      if (agrees(offsetXs[index], offsetYs[index], offsetThetas[index], newX, newY, newTheta)) {
+        bestSupport++;
+      }
+    }
+
+    for (int i = 0; i < size; i++) {
+      int candidate = (head + i) % capacity;
+      int support =
+          agrees(
+                  offsetXs[candidate],
+                  offsetYs[candidate],
+                  offsetThetas[candidate],
+                  newX,
+                  newY,
+                  newTheta)
+              ? 2
+              : 1;
+      for (int j = 0; j < size; j++) {
+        int other = (head + j) % capacity;
+        if (other != candidate
+            && agrees(
+                offsetXs[candidate],
+                offsetYs[candidate],
+                offsetThetas[candidate],
+                offsetXs[other],
+                offsetYs[other],
+                offsetThetas[other])) {
+          support++;
+        }
+      }
+      if (support > bestSupport) {
+        best = candidate;
+        bestSupport = support;
+      }
+    }
+    return best;
+  }
+
+  private boolean agrees(double ax, double ay, double aTheta, double bx, double by, double bTheta) {
+    double dx = ax - bx;
+    double dy = ay - by;
+    return dx * dx + dy * dy <= distance * distance
+        && Math.abs(MathUtil.angleModulus(aTheta - bTheta)) <= angle;
+  }
+
+  /** Forgets samples that fell out of the window behind a timestamp. */
+  private void expire(double timestamp) {
+    while (size > 0 && timestamp - timestamps[head] > windowSeconds) {
+      head = (head + 1) % timestamps.length;
+      size--;
+    }
+  }
+
+  /** Stores an offset, replacing the oldest if the ring is full. */
+  private void store(double timestamp, double offsetX, double offsetY, double offsetTheta) {
+    int index;
+    if (size < timestamps.length) {
+      index = (head + size) % timestamps.length;
+      size++;
+    } else {
+      index = head;
+      head = (head + 1) % timestamps.length;
+    }
+    timestamps[index] = timestamp;
+    offsetXs[index] = offsetX;
+    offsetYs[index] = offsetY;
+    offsetThetas[index] = offsetTheta;
+  }
+
+  /** Forgets every stored offset, call when odometry is reset to a new pose. */
+  public void reset() {
+    head = 0;
+    size = 0;
+  }
+
+  /** @return The number of poses rejected since startup */
+  public long getRejectedCount() {
+    return rejectedCount;
+  }
+}
@@ -0,0 +1,148 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StructArrayPublisher;
+import frc.robot.Constants.ApriltagConstants;
+
+/**
+ * Rejection diagnostics for one camera, or for the fusion stage that checks the observations of
+ * every camera. Every rejection is counted by reason, which is cheap and always on. When enabled,
+ * the rejected corners and poses of one update per sample period are also published as
+ * NetworkTables arrays, and only those updates pay for collecting them.
+ *
+ * <p>Only use from one thread, the camera's ingest thread or the main thread for fusion.
+ */
+public final class VisionDiagnostics {
+  private static final RejectionReason[] REASONS = RejectionReason.values();
+
+  private final boolean enabled;
+  private final double samplePeriod;
+  private final long[] counts = new long[REASONS.length];
+  private final IntegerPublisher[] countPublishers;
+  private final StructArrayPublisher<Pose3d> posesPublisher;
+  private final StructArrayPublisher<Pose3d> tagPosesPublisher;
+  private final DoubleArrayPublisher cornersPublisher;
+  private double lastSampleTime = Double.NEGATIVE_INFINITY;
+  private boolean sampling = false;
+
+  private Pose3d[] poses = new Pose3d[0];
+  private Pose3d[] tagPoses = new Pose3d[0];
+  private double[] corners = new double[0];
+
+  /**
+   * Creates diagnostics for a camera.
+   *
+   * @param cameraName The name of the camera, or of the stage for diagnostics that are not per
+   *     camera
+   * @param enabled Whether rejected data is sampled and published
+   * @param samplePeriod Minimum time between samples in seconds
+   */
+  public VisionDiagnostics(String cameraName, boolean enabled, double samplePeriod) {
+    this.enabled = enabled;
+    this.samplePeriod = samplePeriod;
+
+    NetworkTable table =
+        NetworkTableInstance.getDefault().getTable("Vision/Diagnostics/" + cameraName);
+
+    countPublishers = new IntegerPublisher[REASONS.length];
+    for (int i = 0; i < REASONS.length; i++) {
+      countPublishers[i] = table.getIntegerTopic("Rejections/" + REASONS[i].name()).publish();
+    }
+
+    if (enabled) {
+      posesPublisher = table.getStructArrayTopic("RejectedPoses", Pose3d.struct).publish();
+      tagPosesPublisher = table.getStructArrayTopic("RejectedTagPoses", Pose3d.struct).publish();
+      cornersPublisher = table.getDoubleArrayTopic("RejectedCorners").publish();
+    } else {
+      posesPublisher = null;
+      tagPosesPublisher = null;
+      cornersPublisher = null;
+    }
+  }
+
+  /**
+   * Creates diagnostics for a camera with the configured settings.
+   *
+   * @param cameraName The name of the camera
+   */
+  public VisionDiagnostics(String cameraName) {
+    this(
+        cameraName,
+        ApriltagConstants.VISION_DIAGNOSTICS_ENABLED,
+        ApriltagConstants.VISION_DIAGNOSTICS_SAMPLE_PERIOD);
+  }
+
+  /**
+   * Starts a camera update.
+   *
+   * @param timestamp The current time in seconds
+   * @return True if rejected data should be collected during this update
+   */
+  public boolean beginUpdate(double timestamp) {
+    sampling = timestamp - lastSampleTime >= samplePeriod;
+    if (sampling) {
+      lastSampleTime = timestamp;
+    }
+    return sampling && enabled;
+  }
+
+  /**
+   * Counts a rejection.
+   *
+   * @param reason Why the target or observation was rejected
+   */
+  public void count(RejectionReason reason) {
+    counts[reason.ordinal()]++;
+  }
+
+  /**
+   * Finishes a camera update, publishing the counters and any sampled rejected data.
+   *
+   * @param rejected The rejected data collected during the update, or null if none was collected
+   */
+  public void endUpdate(ObservationBuffer rejected) {
+    if (!sampling) {
+      return;
+    }
+    for (int i = 0; i < counts.length; i++) {
+      countPublishers[i].set(counts[i]);
+    }
+
+    if (!enabled || rejected == null) {
+      return;
+    }
+
+    int observationCount = rejected.getObservationCount();
+    if (poses.length != observationCount) {
+      poses = new Pose3d[observationCount];
+    }
+    for (int i = 0; i < observationCount; i++) {
+      poses[i] = rejected.getObservation(i).robotPose();
+    }
+
+    int tagPoseCount = rejected.getTagPoseCount();
+    if (tagPoses.length != tagPoseCount) {
+      tagPoses = new Pose3d[tagPoseCount];
+    }
+    for (int i = 0; i < tagPoseCount; i++) {
+      tagPoses[i] = rejected.getTagPose(i);
+    }
+
+    int cornerCount = rejected.getCornerCount();
+    if (corners.length != cornerCount * 2) {
+      corners = new double[cornerCount * 2];
+    }
+    for (int i = 0; i < cornerCount; i++) {
+      corners[i * 2] = rejected.getCornerX(i);
+      corners[i * 2 + 1] = rejected.getCornerY(i);
+    }
+
+    posesPublisher.set(poses);
+    tagPosesPublisher.set(tagPoses);
+    cornersPublisher.set(corners);
+  }
+}
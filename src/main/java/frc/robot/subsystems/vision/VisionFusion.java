@@ -0,0 +1,394 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.Constants.ApriltagConstants;
+import frc.robot.helpers.OdometryHistory;
+import java.util.Arrays;
+import swervelib.SwerveDrive;
+
+/**
+ * Orders vision observations from all cameras by capture time before they reach the pose
+ * estimator. The estimator discards every vision update newer than a measurement it is given, so
+ * feeding it a late frame after a newer one throws away good corrections and makes the pose jump.
+ * This stage sorts each batch, drops frames older than the fusion horizon and shifts frames that
+ * are older than the last fused measurement forward along its own odometry history, so the
+ * estimator only ever sees measurements in time order. Observations that imply an impossible jump
+ * from odometry are dropped by a {@link VisionGate} first, and observations that disagree with the
+ * other recent observations by a {@link VisionConsensus}. Only observations that pass both and are
+ * fused become the gate's reference.
+ *
+ * <p>A joint observation solved from several cameras' frames replaces the per-camera observations
+ * of those frames, which would otherwise count the same detections twice. If one of those frames
+ * was already fused on its own, the joint observation is dropped instead.
+ *
+ * <p>The history holds wheel odometry rather than the estimated pose, so the checks never compare
+ * vision against the estimator's earlier vision corrections, and a run of bad poses that got
+ * fused cannot drag the reference along with it.
+ *
+ * <p>Observations captured within a short window of each other, usually one frame from each
+ * camera, are merged into a single measurement by inverse-variance weighting after being moved to
+ * the newest capture time along odometry. Every measurement makes the estimator replay its
+ * odometry since the capture time, so one merged measurement per time slice is much cheaper than
+ * one per camera.
+ */
+public final class VisionFusion {
+  private final OdometryHistory history =
+      new OdometryHistory(ApriltagConstants.ODOMETRY_HISTORY_SIZE);
+
+  private final double horizonSeconds;
+
+  private final VisionGate gate;
+
+  private final VisionConsensus consensus;
+
+  private final VisionDiagnostics diagnostics;
+
+  private final double groupWindowSeconds;
+
+  // Observations of the time slice being grouped, with poses already moved to fusion order
+  private PoseObservation[] groupObservations = new PoseObservation[8];
+  private Pose2d[] groupPoses = new Pose2d[8];
+  private double[] groupTimestamps = new double[8];
+  private int groupCount = 0;
+  private long measurementCount = 0;
+
+  private PoseObservation[] pending = new PoseObservation[16];
+  private int pendingCount = 0;
+
+  /** The joint observation queued for the next fuse, never replaced by itself. */
+  private PoseObservation pendingJoint;
+
+  /** Capture times of frames recent joint observations were solved from, as a ring. */
+  private final double[] jointCaptures = new double[32];
+  private int jointCapturesNext = 0;
+
+  /** Capture times of recently fused per-camera observations, as a ring. */
+  private final double[] fusedCaptures = new double[32];
+  private int fusedCapturesNext = 0;
+
+  /** Observations captured before the last odometry reset are dropped. */
+  private double resetTimestamp = Double.NEGATIVE_INFINITY;
+
+  /** Timestamp of the newest measurement handed to the estimator. */
+  private double lastFusedTimestamp = Double.NEGATIVE_INFINITY;
+
+  private long droppedCount = 0;
+
+  private final double[] poseAtCapture = new double[3];
+  private final double[] poseAtFusion = new double[3];
+
+  /**
+   * Creates a new fusion stage.
+   *
+   * @param horizonSeconds Observations older than this relative to the latest odometry sample are
+   *     dropped
+   * @param gate Rejects observations that disagree with odometry
+   * @param consensus Rejects observations that disagree with other recent observations
+   * @param diagnostics Counts the observations the gate and the consensus reject by reason
+   * @param groupWindowSeconds Observations captured within this long of the first one in a time
+   *     slice are merged into one measurement
+   */
+  public VisionFusion(
+      double horizonSeconds,
+      VisionGate gate,
+      VisionConsensus consensus,
+      VisionDiagnostics diagnostics,
+      double groupWindowSeconds) {
+    this.horizonSeconds = horizonSeconds;
+    this.gate = gate;
+    this.consensus = consensus;
+    this.diagnostics = diagnostics;
+    this.groupWindowSeconds = groupWindowSeconds;
+    Arrays.fill(jointCaptures, Double.NaN);
+    Arrays.fill(fusedCaptures, Double.NaN);
+  }
+
+  /**
+   * Records a wheel odometry pose. Call with every new odometry sample before {@link #fuse}.
+   *
+   * @param timestamp The timestamp of the pose in seconds
+   * @param x The x position in meters
+   * @param y The y position in meters
+   * @param theta The heading in radians
+   */
+  public void recordOdometry(double timestamp, double x, double y, double theta) {
+    history.addSample(timestamp, x, y, theta);
+  }
+
+  /** @return The wheel odometry history recorded by {@link #recordOdometry} */
+  public OdometryHistory getOdometryHistory() {
+    return history;
+  }
+
+  /**
+   * Forgets the odometry history and every check's reference after odometry is reset to a new
+   * pose. Observations captured before the reset are dropped.
+   *
+   * @param timestamp The time of the reset in seconds
+   */
+  public void resetOdometry(double timestamp) {
+    history.clear();
+    gate.reset();
+    consensus.reset();
+    resetTimestamp = timestamp;
+  }
+
+  /**
+   * Queues an observation for the next call to {@link #fuse}.
+   *
+   * @param observation The observation
+   */
+  public void add(PoseObservation observation) {
+    if (pendingCount == pending.length) {
+      pending = Arrays.copyOf(pending, pending.length * 2);
+    }
+    pending[pendingCount++] = observation;
+  }
+
+  /**
+   * Queues a joint observation for the next call to {@link #fuse}. Per-camera observations of the
+   * frames it was solved from are dropped, including ones that arrive in a later batch. If one of
+   * its frames was already fused on its own, the joint observation is dropped instead. Queue at
+   * most one joint observation per batch.
+   *
+   * @param observation The joint observation
+   * @param estimator The estimator that just solved it, for the capture times of its frames
+   */
+  public void addJoint(PoseObservation observation, JointPoseEstimator estimator) {
+    int frameCount = estimator.getSolvedFrameCount();
+    for (int i = 0; i < frameCount; i++) {
+      if (contains(fusedCaptures, estimator.getSolvedFrameTimestamp(i))) {
+        return;
+      }
+    }
+
+    for (int i = 0; i < frameCount; i++) {
+      jointCaptures[jointCapturesNext] = estimator.getSolvedFrameTimestamp(i);
+      jointCapturesNext = (jointCapturesNext + 1) % jointCaptures.length;
+    }
+    pendingJoint = observation;
+    add(observation);
+  }
+
+  private static boolean contains(double[] captures, double timestamp) {
+    for (int i = 0; i < captures.length; i++) {
+      if (captures[i] == timestamp) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Sorts the queued observations by capture time and hands them to the pose estimator in order.
+   *
+   * @param drive The swerve drive whose estimator receives the measurements
+   * @return The number of observations that were fused
+   */
+  public int fuse(SwerveDrive drive) {
+    sortPending();
+    diagnostics.beginUpdate(history.isEmpty() ? 0.0 : history.getLatestTimestamp());
+
+    int fused = 0;
+    double oldestAllowed =
+        history.isEmpty()
+            ? resetTimestamp
+            : Math.max(resetTimestamp, history.getLatestTimestamp() - horizonSeconds);
+
+    for (int i = 0; i < pendingCount; i++) {
+      PoseObservation observation = pending[i];
+      pending[i] = null;
+
+      double timestamp = observation.timestampSeconds();
+      if (timestamp < oldestAllowed) {
+        droppedCount++;
+        continue;
+      }
+      boolean joint = observation == pendingJoint;
+      if (!joint && contains(jointCaptures, timestamp)) {
+        continue;
+      }
+
+      Pose2d pose = observation.robotPose().toPose2d();
+      if (!gate.accept(pose.getX(), pose.getY(), timestamp, history)) {
+        diagnostics.count(RejectionReason.IMPOSSIBLE_JUMP);
+        continue;
+      }
+      if (!consensus.accept(
+          pose.getX(), pose.getY(), pose.getRotation().getRadians(), timestamp, history)) {
+        diagnostics.count(RejectionReason.OUTLIER);
+        continue;
+      }
+      if (!joint) {
+        fusedCaptures[fusedCapturesNext] = timestamp;
+        fusedCapturesNext = (fusedCapturesNext + 1) % fusedCaptures.length;
+      }
+
+      if (timestamp < lastFusedTimestamp) {
+        // Older than something already fused, carry it forward instead of rewinding the estimator
+        if (!history.sample(timestamp, poseAtCapture)
+            || !history.sample(lastFusedTimestamp, poseAtFusion)) {
+          droppedCount++;
+          continue;
+        }
+        pose = compensate(pose, poseAtCapture, poseAtFusion);
+        timestamp = lastFusedTimestamp;
+      }
+      gate.recordFix();
+
+      if (groupCount > 0 && timestamp - groupTimestamps[0] > groupWindowSeconds) {
+        fused += flushGroup(drive);
+      }
+      addToGroup(observation, pose, timestamp);
+    }
+    fused += flushGroup(drive);
+    diagnostics.endUpdate(null);
+
+    pendingCount = 0;
+    pendingJoint = null;
+    return fused;
+  }
+
+  private void addToGroup(PoseObservation observation, Pose2d pose, double timestamp) {
+    if (groupCount == groupObservations.length) {
+      groupObservations = Arrays.copyOf(groupObservations, groupCount * 2);
+      groupPoses = Arrays.copyOf(groupPoses, groupCount * 2);
+      groupTimestamps = Arrays.copyOf(groupTimestamps, groupCount * 2);
+    }
+    groupObservations[groupCount] = observation;
+    groupPoses[groupCount] = pose;
+    groupTimestamps[groupCount] = timestamp;
+    groupCount++;
+  }
+
+  /**
+   * Merges the grouped observations into one measurement at the newest capture time and hands it
+   * to the estimator.
+   *
+   * @return The number of observations fused
+   */
+  private int flushGroup(SwerveDrive drive) {
+    int count = groupCount;
+    if (count == 0) {
+      return 0;
+    }
+    groupCount = 0;
+
+    double timestamp = groupTimestamps[count - 1];
+    measurementCount++;
+    if (count == 1) {
+      drive.addVisionMeasurement(groupPoses[0], timestamp, groupObservations[0].stdDevs());
+      lastFusedTimestamp = timestamp;
+      groupObservations[0] = null;
+      groupPoses[0] = null;
+      return 1;
+    }
+
+    boolean canCompensate = history.sample(timestamp, poseAtFusion);
+    double weightX = 0, weightY = 0, weightTheta = 0;
+    double sumX = 0, sumY = 0, sumCos = 0, sumSin = 0;
+    for (int i = 0; i < count; i++) {
+      Pose2d pose = groupPoses[i];
+      if (canCompensate
+          && groupTimestamps[i] < timestamp
+          && history.sample(groupTimestamps[i], poseAtCapture)) {
+        pose = compensate(pose, poseAtCapture, poseAtFusion);
+      }
+
+      double stdX = groupObservations[i].stdDevs().get(0, 0);
+      double stdY = groupObservations[i].stdDevs().get(1, 0);
+      double stdTheta = groupObservations[i].stdDevs().get(2, 0);
+      double wx = 1 / (stdX * stdX);
+      double wy = 1 / (stdY * stdY);
+      double wTheta = 1 / (stdTheta * stdTheta);
+      weightX += wx;
+      weightY += wy;
+      weightTheta += wTheta;
+      sumX += wx * pose.getX();
+      sumY += wy * pose.getY();
+
+      // Headings are averaged as unit vectors so they never wrap, weighted like the positions if
+      // no observation trusts its heading
+      double headingWeight = wTheta > 0 ? wTheta : wx + wy;
+      sumCos += headingWeight * pose.getRotation().getCos();
+      sumSin += headingWeight * pose.getRotation().getSin();
+
+      groupObservations[i] = null;
+      groupPoses[i] = null;
+    }
+
+    // Independent measurements of the same state, the merged variance is the inverse of the sum
+    // of inverse variances
+    Pose2d merged = new Pose2d(sumX / weightX, sumY / weightY, new Rotation2d(sumCos, sumSin));
+    drive.addVisionMeasurement(
+        merged,
+        timestamp,
+        VecBuilder.fill(
+            Math.sqrt(1 / weightX), Math.sqrt(1 / weightY), Math.sqrt(1 / weightTheta)));
+    lastFusedTimestamp = timestamp;
+    return count;
+  }
+
+  /** @return The number of observations dropped for being too old since startup */
+  public long getDroppedCount() {
+    return droppedCount;
+  }
+
+  /** @return The number of observations rejected by the gate since startup */
+  public long getGatedCount() {
+    return gate.getRejectedCount();
+  }
+
+  /** @return The number of observations rejected by the consensus since startup */
+  public long getOutlierCount() {
+    return consensus.getRejectedCount();
+  }
+
+  /** @return The number of measurements handed to the estimator since startup */
+  public long getMeasurementCount() {
+    return measurementCount;
+  }
+
+  /** Insertion sort, batches are small and usually already close to ordered. */
+  private void sortPending() {
+    for (int i = 1; i < pendingCount; i++) {
+      PoseObservation observation = pending[i];
+      int j = i - 1;
+      while (j >= 0 && pending[j].timestampSeconds() > observation.timestampSeconds()) {
+        pending[j + 1] = pending[j];
+        j--;
+      }
+      pending[j + 1] = observation;
+    }
+  }
+
+  /**
+   * Applies the odometry motion between two samples to a vision pose.
+   *
+   * @param visionPose The vision pose at the time of the first sample
+   * @param from The odometry x, y and theta at the time of the vision pose
+   * @param to The odometry x, y and theta at the target time
+   * @return The vision pose moved to the target time
+   */
+  private static Pose2d compensate(Pose2d visionPose, double[] from, double[] to) {
+    double cos = Math.cos(from[2]);
+    double sin = Math.sin(from[2]);
+    double dx = to[0] - from[0];
+    double dy = to[1] - from[1];
+
+    // Motion expressed in the robot frame at capture time
+    double localX = cos * dx + sin * dy;
+    double localY = -sin * dx + cos * dy;
+
+    double theta = visionPose.getRotation().getRadians();
+    double visionCos = Math.cos(theta);
+    double visionSin = Math.sin(theta);
+
+    return new Pose2d(
+        visionPose.getX() + visionCos * localX - visionSin * localY,
+        visionPose.getY() + visionSin * localX + visionCos * localY,
+        new Rotation2d(theta + to[2] - from[2]));
+  }
+}
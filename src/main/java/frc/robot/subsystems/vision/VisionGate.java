@@ -0,0 +1,105 @@
+package frc.robot.subsystems.vision;
+
+import frc.robot.helpers.OdometryHistory;
+
+/**
+ * Rejects vision poses that imply an impossible jump from wheel odometry. Each fused pose sets the
+ * offset between vision and odometry, and a new pose is checked by how far its offset moved from
+ * that one. The offset already removes the robot's own motion, so it only changes as odometry
+ * drifts. Right after a fix, odometry is trusted to within a fixed tolerance, and the allowed
+ * change then grows at the worst drift rate since that fix, so a gate that has been rejecting for a
+ * while still lets a genuine correction through. Poses only become the fix once fusion has
+ * accepted them, so a rejected outlier never becomes the reference for the next check.
+ */
+public final class VisionGate {
+  private final double tolerance;
+  private final double driftRate;
+  private final double[] odometry = new double[3];
+
+  /** Timestamp of the last fused pose. */
+  private double lastFixTimestamp = Double.NaN;
+
+  /** Offset of the last fused pose from odometry. */
+  private double lastOffsetX = 0;
+
+  private double lastOffsetY = 0;
+
+  /** Capture time and offset of the pose last accepted by {@link #accept}, NaN if none. */
+  private double checkedTimestamp = Double.NaN;
+
+  private double checkedOffsetX = 0;
+  private double checkedOffsetY = 0;
+
+  private long rejectedCount = 0;
+
+  /**
+   * Creates a new gate.
+   *
+   * @param tolerance Distance a pose may disagree with odometry right after a fix in meters
+   * @param driftRate Worst rate at which odometry drifts from the true pose in meters per second
+   */
+  public VisionGate(double tolerance, double driftRate) {
+    this.tolerance = tolerance;
+    this.driftRate = driftRate;
+  }
+
+  /**
+   * Checks a vision pose against odometry at its capture time. Call {@link #recordFix} if the pose
+   * is fused after passing.
+   *
+   * @param x The vision x position in meters
+   * @param y The vision y position in meters
+   * @param timestamp The capture time of the pose in seconds
+   * @param history The wheel odometry history
+   * @return True if the pose is plausible
+   */
+  public boolean accept(double x, double y, double timestamp, OdometryHistory history) {
+    checkedTimestamp = Double.NaN;
+    if (!history.sample(timestamp, odometry)) {
+      return true;
+    }
+
+    double offsetX = x - odometry[0];
+    double offsetY = y - odometry[1];
+
+    // Before the first fix odometry starts from a guess, so there is nothing to compare against
+    if (!Double.isNaN(lastFixTimestamp)) {
+      double allowed = tolerance + driftRate * Math.abs(timestamp - lastFixTimestamp);
+      double dx = offsetX - lastOffsetX;
+      double dy = offsetY - lastOffsetY;
+      if (dx * dx + dy * dy > allowed * allowed) {
+        rejectedCount++;
+        return false;
+      }
+    }
+
+    checkedTimestamp = timestamp;
+    checkedOffsetX = offsetX;
+    checkedOffsetY = offsetY;
+    return true;
+  }
+
+  /** Records the pose that last passed {@link #accept} as the latest fix, once it was fused. */
+  public void recordFix() {
+    if (Double.isNaN(checkedTimestamp)) {
+      return;
+    }
+    if (Double.isNaN(lastFixTimestamp) || checkedTimestamp >= lastFixTimestamp) {
+      lastFixTimestamp = checkedTimestamp;
+      lastOffsetX = checkedOffsetX;
+      lastOffsetY = checkedOffsetY;
+    }
+    checkedTimestamp = Double.NaN;
+  }
+
+  /** Forgets the last fix, call when odometry is reset to a new pose. */
+  public void reset() {
+    lastFixTimestamp = Double.NaN;
+    checkedTimestamp = Double.NaN;
+  }
+
+  /** @return The number of poses rejected since startup */
+  public long getRejectedCount() {
+    return rejectedCount;
+  }
+}
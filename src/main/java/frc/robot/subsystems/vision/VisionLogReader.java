@@ -0,0 +1,163 @@
+package frc.robot.subsystems.vision;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.photonvision.common.dataflow.structures.Packet;
+import org.photonvision.targeting.PhotonPipelineResult;
+
+/**
+ * Reads a log written by {@link VisionLogWriter}. The file is memory-mapped and indexed once when
+ * opened, so seeking to any time is a binary search and reading a result copies only its payload.
+ */
+public final class VisionLogReader {
+  private final MappedByteBuffer buffer;
+
+  /** File offset of each result payload length field, in file order. */
+  private long[] offsets = new long[1024];
+
+  /** Capture timestamp of each result in seconds, in file order. */
+  private double[] timestamps = new double[1024];
+
+  private int count = 0;
+  private int position = 0;
+  private CameraIntrinsics intrinsics;
+
+  /**
+   * Opens and indexes a log file.
+   *
+   * @param file The file to read
+   * @throws IOException If the file cannot be read or is not a vision log
+   */
+  public VisionLogReader(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    if (buffer.remaining() < 8
+        || buffer.getInt() != VisionLogWriter.MAGIC
+        || buffer.getInt() != VisionLogWriter.VERSION) {
+      throw new IOException("Not a vision log: " + file);
+    }
+
+    while (buffer.hasRemaining()) {
+      byte type = buffer.get();
+      if (type == VisionLogWriter.RESULT_RECORD) {
+        if (buffer.remaining() < 12) {
+          break; // Truncated by a power loss
+        }
+        double timestamp = buffer.getLong() / 1e6;
+        int offset = buffer.position();
+        int length = buffer.getInt();
+        if (length < 0 || buffer.remaining() < length) {
+          break;
+        }
+        buffer.position(buffer.position() + length);
+        addIndex(offset, timestamp);
+      } else if (type == VisionLogWriter.INTRINSICS_RECORD) {
+        if (buffer.remaining() < 9 * 8) {
+          break;
+        }
+        intrinsics =
+            new CameraIntrinsics(
+                buffer.getDouble(),
+                buffer.getDouble(),
+                buffer.getDouble(),
+                buffer.getDouble(),
+                buffer.getDouble(),
+                buffer.getDouble(),
+                buffer.getDouble(),
+                buffer.getDouble(),
+                buffer.getDouble());
+      } else {
+        throw new IOException("Corrupt vision log: " + file);
+      }
+    }
+  }
+
+  private void addIndex(long offset, double timestamp) {
+    if (count == offsets.length) {
+      offsets = Arrays.copyOf(offsets, count * 2);
+      timestamps = Arrays.copyOf(timestamps, count * 2);
+    }
+    offsets[count] = offset;
+    timestamps[count] = timestamp;
+    count++;
+  }
+
+  /** @return The camera calibration stored in the log, or null if none was recorded */
+  public CameraIntrinsics getIntrinsics() {
+    return intrinsics;
+  }
+
+  /** @return The number of results in the log */
+  public int size() {
+    return count;
+  }
+
+  /** @return True if results remain after the current position */
+  public boolean hasNext() {
+    return position < count;
+  }
+
+  /** @return The capture timestamp of the next result in seconds */
+  public double peekTimestamp() {
+    return timestamps[position];
+  }
+
+  /** @return The capture timestamp of the first result in seconds, or NaN if the log is empty */
+  public double getStartTimestamp() {
+    return count > 0 ? timestamps[0] : Double.NaN;
+  }
+
+  /** @return The capture timestamp of the last result in seconds, or NaN if the log is empty */
+  public double getEndTimestamp() {
+    return count > 0 ? timestamps[count - 1] : Double.NaN;
+  }
+
+  /**
+   * Moves to the first result captured at or after a time.
+   *
+   * @param timestamp The time in seconds
+   */
+  public void seek(double timestamp) {
+    int index = Arrays.binarySearch(timestamps, 0, count, timestamp);
+    if (index < 0) {
+      index = -index - 1;
+    } else {
+      // Several results may share a timestamp, start at the first
+      while (index > 0 && timestamps[index - 1] == timestamp) {
+        index--;
+      }
+    }
+    position = index;
+  }
+
+  /**
+   * Reads the next result and advances. The result's receive timestamp is set so that its
+   * timestamp matches the recorded capture time plus an offset.
+   *
+   * @param timeOffset Seconds added to the recorded timestamp, to move it into another time base
+   * @return The result
+   */
+  public PhotonPipelineResult next(double timeOffset) {
+    int offset = (int) offsets[position];
+    double timestamp = timestamps[position];
+    position++;
+
+    int length = buffer.getInt(offset);
+    byte[] data = new byte[length];
+    buffer.get(offset + 4, data);
+
+    PhotonPipelineResult result = PhotonPipelineResult.photonStruct.unpack(new Packet(data));
+
+    // The capture timestamp is derived from the receive time minus the pipeline latency
+    long latencyMicros =
+        result.metadata.publishTimestampMicros - result.metadata.captureTimestampMicros;
+    result.setReceiveTimestampMicros((long) ((timestamp + timeOffset) * 1e6) + latencyMicros);
+    return result;
+  }
+}
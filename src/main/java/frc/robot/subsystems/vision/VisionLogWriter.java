@@ -0,0 +1,120 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.photonvision.common.dataflow.structures.Packet;
+import org.photonvision.targeting.PhotonPipelineResult;
+
+/**
+ * Records the raw pipeline results of one camera to a compact binary log that {@link
+ * VisionLogReader} can replay. Results are stored in PhotonVision's own wire format.
+ *
+ * <p>Format, big endian: the magic number and version, then records. Each record starts with a type
+ * byte. A result record holds the capture timestamp in microseconds, the payload length and the
+ * serialized result. An intrinsics record holds the nine calibration values of {@link
+ * CameraIntrinsics}.
+ */
+public final class VisionLogWriter implements AutoCloseable {
+  /** Magic number at the start of every log, "PVLG". */
+  static final int MAGIC = 0x50564C47;
+
+  /** Format version. */
+  static final int VERSION = 1;
+
+  /** Record type of a pipeline result. */
+  static final byte RESULT_RECORD = 1;
+
+  /** Record type of a camera calibration. */
+  static final byte INTRINSICS_RECORD = 2;
+
+  /** Results between flushes, so a brownout loses at most this many. */
+  private static final int FLUSH_INTERVAL = 50;
+
+  private final DataOutputStream out;
+  private final Packet packet = new Packet(1024);
+  private int unflushed = 0;
+  private boolean failed = false;
+
+  /**
+   * Opens a new log file, replacing any existing file.
+   *
+   * @param file The file to write
+   * @throws IOException If the file cannot be created
+   */
+  public VisionLogWriter(Path file) throws IOException {
+    Files.createDirectories(file.getParent());
+    out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+  }
+
+  /**
+   * Appends a pipeline result.
+   *
+   * @param result The result to record
+   */
+  public void writeResult(PhotonPipelineResult result) {
+    if (failed) {
+      return;
+    }
+
+    packet.clear();
+    PhotonPipelineResult.photonStruct.pack(packet, result);
+    byte[] data = packet.getWrittenDataCopy();
+
+    try {
+      out.writeByte(RESULT_RECORD);
+      out.writeLong((long) (result.getTimestampSeconds() * 1e6));
+      out.writeInt(data.length);
+      out.write(data);
+
+      if (++unflushed >= FLUSH_INTERVAL) {
+        out.flush();
+        unflushed = 0;
+      }
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /**
+   * Appends a camera calibration.
+   *
+   * @param intrinsics The calibration to record
+   */
+  public void writeIntrinsics(CameraIntrinsics intrinsics) {
+    if (failed) {
+      return;
+    }
+
+    try {
+      out.writeByte(INTRINSICS_RECORD);
+      out.writeDouble(intrinsics.fx());
+      out.writeDouble(intrinsics.fy());
+      out.writeDouble(intrinsics.cx());
+      out.writeDouble(intrinsics.cy());
+      out.writeDouble(intrinsics.k1());
+      out.writeDouble(intrinsics.k2());
+      out.writeDouble(intrinsics.p1());
+      out.writeDouble(intrinsics.p2());
+      out.writeDouble(intrinsics.k3());
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+
+  /** Stops recording after a write error instead of reporting it every loop. */
+  private void fail(IOException e) {
+    failed = true;
+    DriverStation.reportWarning("Vision log recording stopped: " + e.getMessage(), false);
+  }
+}
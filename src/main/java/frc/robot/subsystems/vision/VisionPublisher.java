@@ -0,0 +1,112 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StructArrayPublisher;
+import edu.wpi.first.networktables.StructPublisher;
+
+/**
+ * Publishes vision data to NetworkTables as WPILib structs, which dashboards such as AdvantageScope
+ * draw directly on the field. All publishers are created once. A publish is skipped if the period
+ * has not passed or the snapshot has not changed since the last one, and publish arrays are only
+ * reallocated when their length changes.
+ */
+public final class VisionPublisher {
+  private final double period;
+  private final StructPublisher<Pose2d> robotPose;
+  private final ObservationPublisher valid;
+  private final ObservationPublisher rejected;
+
+  private double lastPublishTime = Double.NEGATIVE_INFINITY;
+  private long lastVersion = -1;
+
+  /**
+   * Creates the publishers.
+   *
+   * @param table The table to publish under
+   * @param period The minimum time between publishes in seconds
+   */
+  public VisionPublisher(NetworkTable table, double period) {
+    this.period = period;
+    robotPose = table.getStructTopic("RobotPose", Pose2d.struct).publish();
+    valid = new ObservationPublisher(table.getSubTable("Valid"));
+    rejected = new ObservationPublisher(table.getSubTable("Rejected"));
+  }
+
+  /**
+   * Creates the publishers under the default "Vision" table.
+   *
+   * @param period The minimum time between publishes in seconds
+   */
+  public VisionPublisher(double period) {
+    this(NetworkTableInstance.getDefault().getTable("Vision"), period);
+  }
+
+  /**
+   * Publishes the robot pose and the snapshot if the period has passed.
+   *
+   * @param timestamp The current time in seconds
+   * @param pose The fused robot pose
+   * @param snapshot The combined detections of every camera
+   */
+  public void publish(double timestamp, Pose2d pose, VisionSnapshot snapshot) {
+    if (timestamp - lastPublishTime < period) {
+      return;
+    }
+    lastPublishTime = timestamp;
+    robotPose.set(pose);
+
+    if (snapshot.getVersion() == lastVersion) {
+      return;
+    }
+    lastVersion = snapshot.getVersion();
+    valid.publish(snapshot.getValid());
+    rejected.publish(snapshot.getRejected());
+  }
+
+  /** Publishers for one set of detections. */
+  private static final class ObservationPublisher {
+    private final StructArrayPublisher<Pose3d> posesPublisher;
+    private final StructArrayPublisher<Pose3d> tagPosesPublisher;
+    private final StructArrayPublisher<Translation2d> cornersPublisher;
+    private Pose3d[] poses = new Pose3d[0];
+    private Pose3d[] tagPoses = new Pose3d[0];
+    private Translation2d[] corners = new Translation2d[0];
+
+    ObservationPublisher(NetworkTable table) {
+      posesPublisher = table.getStructArrayTopic("Poses", Pose3d.struct).publish();
+      tagPosesPublisher = table.getStructArrayTopic("TagPoses", Pose3d.struct).publish();
+      cornersPublisher = table.getStructArrayTopic("Corners", Translation2d.struct).publish();
+    }
+
+    void publish(ObservationView view) {
+      if (poses.length != view.getObservationCount()) {
+        poses = new Pose3d[view.getObservationCount()];
+      }
+      for (int i = 0; i < poses.length; i++) {
+        poses[i] = view.getObservation(i).robotPose();
+      }
+      posesPublisher.set(poses);
+
+      if (tagPoses.length != view.getTagPoseCount()) {
+        tagPoses = new Pose3d[view.getTagPoseCount()];
+      }
+      for (int i = 0; i < tagPoses.length; i++) {
+        tagPoses[i] = view.getTagPose(i);
+      }
+      tagPosesPublisher.set(tagPoses);
+
+      // Pixel coordinates, Translation2d is only used as a packed x and y
+      if (corners.length != view.getCornerCount()) {
+        corners = new Translation2d[view.getCornerCount()];
+      }
+      for (int i = 0; i < corners.length; i++) {
+        corners[i] = new Translation2d(view.getCornerX(i), view.getCornerY(i));
+      }
+      cornersPublisher.set(corners);
+    }
+  }
+}
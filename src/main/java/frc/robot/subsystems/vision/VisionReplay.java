@@ -0,0 +1,118 @@
+package frc.robot.subsystems.vision;
+
+import frc.robot.Constants.ApriltagConstants;
+import frc.robot.helpers.PhotonConfig;
+import frc.robot.subsystems.vision.Vision.AprilTagIOInputs;
+import frc.robot.subsystems.vision.scoring.ObservationScorer;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Replays a recorded match of vision logs offline, as fast as the estimator can run. A virtual
+ * clock steps through the logs at the camera poll period, so the inputs seen are the same every run
+ * no matter how fast the machine is.
+ */
+public final class VisionReplay {
+  private VisionReplay() {}
+
+  /**
+   * Opens the logs of every configured camera that were recorded to a directory.
+   *
+   * @param directory The directory a match was recorded to
+   * @param configs The configurations of the cameras to open
+   * @param scorer Computes the standard deviations of each observation
+   * @param angularVelocity Supplies the robot's current angular velocity in radians per second
+   * @param clock Supplies the replay time in seconds
+   * @return The replay IOs with their camera configurations, cameras without a log are skipped
+   * @throws IOException If a log cannot be read
+   */
+  public static List<ReplayCamera> open(
+      Path directory,
+      PhotonConfig[] configs,
+      ObservationScorer scorer,
+      DoubleSupplier angularVelocity,
+      DoubleSupplier clock)
+      throws IOException {
+    List<ReplayCamera> cameras = new ArrayList<>();
+    for (PhotonConfig config : configs) {
+      Path file = directory.resolve(ApriltagIOPhoton.getLogName(config));
+      if (!Files.exists(file)) {
+        continue;
+      }
+
+      VisionLogReader reader = new VisionLogReader(file);
+      ApriltagIOReplay io = new ApriltagIOReplay(config, scorer, angularVelocity, reader, clock);
+      cameras.add(new ReplayCamera(io, config, reader));
+    }
+    return cameras;
+  }
+
+  /**
+   * A camera being replayed.
+   *
+   * @param io The replay IO
+   * @param config The camera configuration
+   * @param reader The log being replayed
+   */
+  public record ReplayCamera(ApriltagIOReplay io, PhotonConfig config, VisionLogReader reader) {}
+
+  /**
+   * Replays every camera log in a directory to completion.
+   *
+   * @param directory The directory a match was recorded to
+   * @param configs The configurations of the cameras to open
+   * @param scorer Computes the standard deviations of each observation
+   * @param sink Receives each camera's inputs after every poll, the inputs are reused afterwards
+   * @return The number of polls replayed
+   * @throws IOException If a log cannot be read
+   */
+  public static int run(
+      Path directory,
+      PhotonConfig[] configs,
+      ObservationScorer scorer,
+      BiConsumer<PhotonConfig, AprilTagIOInputs> sink)
+      throws IOException {
+    // Angular velocity is not recorded, so the scorer sees a robot that is not turning
+    double[] now = {0.0};
+    List<ReplayCamera> cameras = open(directory, configs, scorer, () -> 0.0, () -> now[0]);
+    if (cameras.isEmpty()) {
+      return 0;
+    }
+
+    // Start the clock at the earliest recording, so every log keeps its original time base
+    double start = Double.POSITIVE_INFINITY;
+    for (ReplayCamera camera : cameras) {
+      if (camera.reader().size() > 0) {
+        start = Math.min(start, camera.reader().getStartTimestamp());
+      }
+    }
+    if (start == Double.POSITIVE_INFINITY) {
+      return 0;
+    }
+
+    now[0] = start;
+    for (ReplayCamera camera : cameras) {
+      camera.io().seek(start);
+    }
+
+    AprilTagIOInputs inputs = new AprilTagIOInputs();
+    int polls = 0;
+    boolean finished = false;
+    while (!finished) {
+      now[0] += ApriltagConstants.CAMERA_POLL_PERIOD;
+      finished = true;
+      for (ReplayCamera camera : cameras) {
+        camera.io().updateInputs(inputs);
+        sink.accept(camera.config(), inputs);
+        finished &= camera.io().isFinished();
+      }
+      polls++;
+    }
+    return polls;
+  }
+}
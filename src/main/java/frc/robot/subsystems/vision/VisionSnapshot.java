@@ -0,0 +1,68 @@
+package frc.robot.subsystems.vision;
+
+import frc.robot.subsystems.vision.Vision.AprilTagIOInputs;
+
+/**
+ * Detections of every apriltag camera combined, rebuilt by {@link Vision} each loop in which at
+ * least one camera poll carried pipeline results. Every poll drained in a loop is merged, so a
+ * camera polled several times per loop keeps the detections of each poll, and a poll with no new
+ * results leaves the detections as they were. The buffers are reused, so a loop with no new results
+ * neither copies nor allocates. Views are only valid on the main robot thread until the next loop.
+ */
+public final class VisionSnapshot {
+  private final ObservationBuffer valid = new ObservationBuffer();
+  private final ObservationBuffer rejected = new ObservationBuffer();
+  private boolean changed = false;
+  private long version = 0;
+
+  /** Starts combining the polls of a new loop. */
+  void begin() {
+    changed = false;
+  }
+
+  /**
+   * Merges the detections of one camera poll. The first poll with results in a loop replaces the
+   * detections of the previous rebuild.
+   *
+   * @param inputs The inputs of the poll
+   */
+  void add(AprilTagIOInputs inputs) {
+    if (inputs.resultCount == 0) {
+      return;
+    }
+    if (!changed) {
+      valid.clear();
+      rejected.clear();
+      changed = true;
+    }
+    valid.addAll(inputs.valid);
+    rejected.addAll(inputs.rejected);
+  }
+
+  /**
+   * Finishes the loop started by {@link #begin}.
+   *
+   * @return True if the snapshot was rebuilt
+   */
+  boolean end() {
+    if (changed) {
+      version++;
+    }
+    return changed;
+  }
+
+  /** @return The detections that passed filtering on every camera */
+  public ObservationView getValid() {
+    return valid;
+  }
+
+  /** @return The sampled rejected detections of every camera, see {@link VisionDiagnostics} */
+  public ObservationView getRejected() {
+    return rejected;
+  }
+
+  /** @return A counter that changes whenever the snapshot is rebuilt */
+  public long getVersion() {
+    return version;
+  }
+}
@@ -0,0 +1,28 @@
+package frc.robot.subsystems.vision.scoring;
+
+import frc.robot.Constants.ApriltagConstants;
+
+/**
+ * Original scoring: the fixed single or multi tag standard deviations, scaled by the squared
+ * average tag distance. Kept as a baseline to compare other scorers against.
+ */
+public final class DistanceScorer implements ObservationScorer {
+  @Override
+  public boolean score(ObservationFeatures features, double[] stdDevs) {
+    if (features.tagCount <= 0) {
+      return false;
+    }
+
+    double scale = 1 + (features.averageDistance * features.averageDistance / 30.0);
+    if (features.tagCount == 1) {
+      stdDevs[0] = ApriltagConstants.SINGLE_TAG_STD_DEVS.get(0, 0) * scale;
+      stdDevs[1] = ApriltagConstants.SINGLE_TAG_STD_DEVS.get(1, 0) * scale;
+      stdDevs[2] = ApriltagConstants.SINGLE_TAG_STD_DEVS.get(2, 0) * scale;
+    } else {
+      stdDevs[0] = ApriltagConstants.MULTI_TAG_STD_DEVS.get(0, 0) * scale;
+      stdDevs[1] = ApriltagConstants.MULTI_TAG_STD_DEVS.get(1, 0) * scale;
+      stdDevs[2] = ApriltagConstants.MULTI_TAG_STD_DEVS.get(2, 0) * scale;
+    }
+    return true;
+  }
+}
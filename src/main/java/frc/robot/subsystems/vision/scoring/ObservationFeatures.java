@@ -0,0 +1,61 @@
+package frc.robot.subsystems.vision.scoring;
+
+/**
+ * Quality features of a single vision pose observation. Instances are mutable and meant to be
+ * reused by one thread, so scoring an observation does not allocate.
+ */
+public final class ObservationFeatures {
+  /** Number of known tags used by the solve. */
+  public int tagCount;
+
+  /** Average planar distance from the estimated pose to the tags in meters. */
+  public double averageDistance;
+
+  /** Average tag area in percent of the image, or 0 if unknown. */
+  public double averageArea;
+
+  /** Reprojection error of the solve in pixels, or 0 if unknown. */
+  public double reprojectionError;
+
+  /** Pose ambiguity of the solve (0-1, lower is better). */
+  public double ambiguity;
+
+  /** Angular velocity of the robot when the frame was captured in radians per second. */
+  public double angularVelocity;
+
+  /** Calibration factor of the camera the observation came from, 1 for a nominal camera. */
+  public double cameraStdDevFactor = 1.0;
+
+  /** Number of tags that should not be visible from the current pose estimate. */
+  public int unexpectedTagCount;
+
+  /** Resets all features to their defaults. */
+  public void reset() {
+    tagCount = 0;
+    averageDistance = 0.0;
+    averageArea = 0.0;
+    reprojectionError = 0.0;
+    ambiguity = 0.0;
+    angularVelocity = 0.0;
+    cameraStdDevFactor = 1.0;
+    unexpectedTagCount = 0;
+  }
+
+  /**
+   * Creates a copy of these features, for recording samples to replay later.
+   *
+   * @return The copy
+   */
+  public ObservationFeatures copy() {
+    ObservationFeatures copy = new ObservationFeatures();
+    copy.tagCount = tagCount;
+    copy.averageDistance = averageDistance;
+    copy.averageArea = averageArea;
+    copy.reprojectionError = reprojectionError;
+    copy.ambiguity = ambiguity;
+    copy.angularVelocity = angularVelocity;
+    copy.cameraStdDevFactor = cameraStdDevFactor;
+    copy.unexpectedTagCount = unexpectedTagCount;
+    return copy;
+  }
+}
@@ -0,0 +1,18 @@
+package frc.robot.subsystems.vision.scoring;
+
+/**
+ * Computes the measurement standard deviations of a vision pose observation from its quality
+ * features. Implementations are called from the camera ingest threads and must be stateless or
+ * thread-safe, and should not allocate.
+ */
+public interface ObservationScorer {
+  /**
+   * Scores an observation.
+   *
+   * @param features The features of the observation
+   * @param stdDevs Array of at least three elements that receives the x, y and heading standard
+   *     deviations in meters and radians
+   * @return False if the observation should be rejected
+   */
+  boolean score(ObservationFeatures features, double[] stdDevs);
+}
@@ -0,0 +1,78 @@
+package frc.robot.subsystems.vision.scoring;
+
+import frc.robot.Constants.ApriltagConstants;
+
+/**
+ * Scores observations from every available quality feature. Starting from the single or multi tag
+ * standard deviations, each feature multiplies in its own penalty: distance, small tag area,
+ * reprojection error, ambiguity, robot rotation (motion blur and timestamp error), tags that should
+ * not be visible from the current estimate and the calibration factor of the camera.
+ */
+public final class QualityScorer implements ObservationScorer {
+  /** Squared distance in m^2 at which the distance penalty doubles the standard deviations. */
+  private static final double DISTANCE_SQUARED_SCALE = 30.0;
+
+  /** Tag area in percent of the image below which the area penalty starts to grow. */
+  private static final double REFERENCE_AREA = 0.5;
+
+  /** Reprojection error in pixels at which the reprojection penalty doubles. */
+  private static final double REFERENCE_REPROJECTION_ERROR = 2.0;
+
+  /** Angular velocity in rad/s at which the rotation penalty doubles. */
+  private static final double REFERENCE_ANGULAR_VELOCITY = 2.0;
+
+  /** Penalty added per tag that should not be visible, a likely misdetection or a bad estimate. */
+  private static final double UNEXPECTED_TAG_PENALTY = 2.0;
+
+  /** Extra heading trust lost per tag missing below three tags. */
+  private static final double HEADING_TAG_PENALTY = 2.0;
+
+  @Override
+  public boolean score(ObservationFeatures features, double[] stdDevs) {
+    if (features.tagCount <= 0
+        || Double.isNaN(features.averageDistance)
+        || features.ambiguity > ApriltagConstants.MAXIMUM_AMBIGUITY && features.tagCount == 1) {
+      return false;
+    }
+
+    double distancePenalty =
+        1 + features.averageDistance * features.averageDistance / DISTANCE_SQUARED_SCALE;
+    double areaPenalty =
+        features.averageArea > 0 ? Math.max(1.0, REFERENCE_AREA / features.averageArea) : 1.0;
+    double reprojectionPenalty = 1 + features.reprojectionError / REFERENCE_REPROJECTION_ERROR;
+    double ambiguityPenalty = 1 + features.ambiguity / ApriltagConstants.MAXIMUM_AMBIGUITY;
+    double rotationPenalty = 1 + Math.abs(features.angularVelocity) / REFERENCE_ANGULAR_VELOCITY;
+    double surprisePenalty = 1 + UNEXPECTED_TAG_PENALTY * features.unexpectedTagCount;
+
+    double scale =
+        distancePenalty
+            * areaPenalty
+            * reprojectionPenalty
+            * ambiguityPenalty
+            * rotationPenalty
+            * surprisePenalty
+            * features.cameraStdDevFactor;
+
+    boolean single = features.tagCount == 1;
+    double baseX =
+        single
+            ? ApriltagConstants.SINGLE_TAG_STD_DEVS.get(0, 0)
+            : ApriltagConstants.MULTI_TAG_STD_DEVS.get(0, 0);
+    double baseY =
+        single
+            ? ApriltagConstants.SINGLE_TAG_STD_DEVS.get(1, 0)
+            : ApriltagConstants.MULTI_TAG_STD_DEVS.get(1, 0);
+    double baseTheta =
+        single
+            ? ApriltagConstants.SINGLE_TAG_STD_DEVS.get(2, 0)
+            : ApriltagConstants.MULTI_TAG_STD_DEVS.get(2, 0);
+
+    // Heading from few tags is poorly constrained, trust it less than translation
+    double headingPenalty = 1 + HEADING_TAG_PENALTY * Math.max(0, 3 - features.tagCount) / 3.0;
+
+    stdDevs[0] = baseX * scale;
+    stdDevs[1] = baseY * scale;
+    stdDevs[2] = baseTheta * scale * headingPenalty;
+    return true;
+  }
+}
@@ -0,0 +1,154 @@
+package frc.robot.subsystems.vision.scoring;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.helpers.OdometryHistory;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Replays recorded observations through a scorer to judge how well its standard deviations match
+ * the real error. A well calibrated scorer has a normalized squared error close to 1 on each axis:
+ * much larger means it is overconfident, much smaller means it throws information away. Samples
+ * are collected by a {@link Recorder} from the simulated cameras, where the true pose is known.
+ */
+public final class ScorerReplay {
+  private ScorerReplay() {}
+
+  /**
+   * A recorded observation with the pose it should have reported.
+   *
+   * @param features The quality features of the observation
+   * @param measured The pose the observation reported
+   * @param reference The reference pose at the same time, from simulation or a trusted estimate
+   */
+  public record Sample(ObservationFeatures features, Pose2d measured, Pose2d reference) {}
+
+  /**
+   * Result of replaying samples through a scorer.
+   *
+   * @param accepted Number of samples the scorer accepted
+   * @param rejected Number of samples the scorer rejected
+   * @param normalizedErrorX Mean squared x error divided by the predicted variance
+   * @param normalizedErrorY Mean squared y error divided by the predicted variance
+   * @param normalizedErrorTheta Mean squared heading error divided by the predicted variance
+   */
+  public record Result(
+      int accepted,
+      int rejected,
+      double normalizedErrorX,
+      double normalizedErrorY,
+      double normalizedErrorTheta) {}
+
+  /**
+   * Replays samples through a scorer.
+   *
+   * @param scorer The scorer to evaluate
+   * @param samples The recorded samples
+   * @return The calibration result
+   */
+  public static Result evaluate(ObservationScorer scorer, Collection<Sample> samples) {
+    double[] stdDevs = new double[3];
+    int accepted = 0;
+    int rejected = 0;
+    double sumX = 0;
+    double sumY = 0;
+    double sumTheta = 0;
+
+    for (Sample sample : samples) {
+      if (!scorer.score(sample.features(), stdDevs)) {
+        rejected++;
+        continue;
+      }
+
+      double errorX = sample.measured().getX() - sample.reference().getX();
+      double errorY = sample.measured().getY() - sample.reference().getY();
+      double errorTheta =
+          MathUtil.angleModulus(
+              sample.measured().getRotation().getRadians()
+                  - sample.reference().getRotation().getRadians());
+
+      sumX += errorX * errorX / (stdDevs[0] * stdDevs[0]);
+      sumY += errorY * errorY / (stdDevs[1] * stdDevs[1]);
+      sumTheta += errorTheta * errorTheta / (stdDevs[2] * stdDevs[2]);
+      accepted++;
+    }
+
+    if (accepted == 0) {
+      return new Result(0, rejected, Double.NaN, Double.NaN, Double.NaN);
+    }
+    return new Result(
+        accepted, rejected, sumX / accepted, sumY / accepted, sumTheta / accepted);
+  }
+
+  /**
+   * Collects samples by pairing the features of each observation with the reference pose at its
+   * capture time. Observations can be recorded from any thread, references and pairing happen on
+   * the main robot thread. Only the most recent samples are kept.
+   */
+  public static final class Recorder {
+    private record Pending(ObservationFeatures features, Pose2d measured, double timestamp) {}
+
+    private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private final OdometryHistory references = new OdometryHistory(256);
+    private final ArrayDeque<Sample> samples;
+    private final int capacity;
+    private final double[] reference = new double[3];
+
+    /**
+     * Creates a new recorder.
+     *
+     * @param capacity The number of recent samples to keep
+     */
+    public Recorder(int capacity) {
+      this.capacity = capacity;
+      samples = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Records an observation before it is scored. Safe to call from any thread.
+     *
+     * @param features The quality features of the observation, copied
+     * @param measured The pose the observation reported
+     * @param timestamp The capture time of the observation in seconds
+     */
+    public void record(ObservationFeatures features, Pose2d measured, double timestamp) {
+      pending.offer(new Pending(features.copy(), measured, timestamp));
+    }
+
+    /**
+     * Records the reference pose and pairs every recorded observation captured before it. Only call
+     * from the main robot thread.
+     *
+     * @param timestamp The time of the reference pose in seconds
+     * @param pose The reference pose
+     */
+    public void addReference(double timestamp, Pose2d pose) {
+      references.addSample(timestamp, pose.getX(), pose.getY(), pose.getRotation().getRadians());
+
+      Pending observation;
+      while ((observation = pending.peek()) != null && observation.timestamp() <= timestamp) {
+        pending.poll();
+        if (!references.sample(observation.timestamp(), reference)) {
+          continue;
+        }
+        if (samples.size() == capacity) {
+          samples.pollFirst();
+        }
+        samples.addLast(
+            new Sample(
+                observation.features(),
+                observation.measured(),
+                new Pose2d(reference[0], reference[1], new Rotation2d(reference[2]))));
+      }
+    }
+
+    /** @return The recorded samples, oldest first. Only read from the main robot thread. */
+    public Collection<Sample> getSamples() {
+      return samples;
+    }
+  }
+}
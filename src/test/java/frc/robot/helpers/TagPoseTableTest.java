@@ -0,0 +1,40 @@
+package frc.robot.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.geometry.Pose3d;
+import org.junit.jupiter.api.Test;
+
+class TagPoseTableTest {
+  private final AprilTagFieldLayout layout =
+      AprilTagFieldLayout.loadField(AprilTagFields.k2025ReefscapeWelded);
+  private final TagPoseTable table = new TagPoseTable(layout);
+
+  @Test
+  void matchesLayout() {
+    for (AprilTag tag : layout.getTags()) {
+      assertTrue(table.contains(tag.ID));
+      assertEquals(layout.getTagPose(tag.ID).get(), table.getPose(tag.ID));
+    }
+  }
+
+  @Test
+  void unknownIdsAreMissing() {
+    assertFalse(table.contains(-1));
+    assertFalse(table.contains(0));
+    assertFalse(table.contains(table.size()));
+    assertNull(table.getPose(table.size()));
+  }
+
+  @Test
+  void distanceIsPlanar() {
+    Pose3d tag = table.getPose(7);
+    assertEquals(5.0, table.getDistance2d(7, tag.getX() - 3.0, tag.getY() + 4.0), 1e-9);
+  }
+}
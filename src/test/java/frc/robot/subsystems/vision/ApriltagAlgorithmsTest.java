@@ -0,0 +1,46 @@
+package frc.robot.subsystems.vision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import frc.robot.Constants.FieldConstants;
+import org.junit.jupiter.api.Test;
+
+class ApriltagAlgorithmsTest {
+  @Test
+  void acceptsLevelPoseOnField() {
+    assertNull(ApriltagAlgorithms.checkPose(new Pose3d(4.0, 3.0, 0.0, new Rotation3d(0, 0, 1.0))));
+  }
+
+  @Test
+  void rejectsPoseOutOfField() {
+    assertEquals(
+        RejectionReason.OUT_OF_FIELD,
+        ApriltagAlgorithms.checkPose(new Pose3d(-2.0, 3.0, 0.0, new Rotation3d())));
+    assertEquals(
+        RejectionReason.OUT_OF_FIELD,
+        ApriltagAlgorithms.checkPose(
+            new Pose3d(4.0, FieldConstants.FIELD_WIDTH_METERS + 2.0, 0.0, new Rotation3d())));
+  }
+
+  @Test
+  void rejectsPoseOffFloor() {
+    assertEquals(
+        RejectionReason.OFF_FLOOR,
+        ApriltagAlgorithms.checkPose(new Pose3d(4.0, 3.0, 1.0, new Rotation3d())));
+  }
+
+  @Test
+  void rejectsTiltedPose() {
+    assertEquals(
+        RejectionReason.TILTED,
+        ApriltagAlgorithms.checkPose(
+            new Pose3d(4.0, 3.0, 0.0, new Rotation3d(0, Math.toRadians(25.0), 0))));
+    assertEquals(
+        RejectionReason.TILTED,
+        ApriltagAlgorithms.checkPose(
+            new Pose3d(4.0, 3.0, 0.0, new Rotation3d(Math.toRadians(-25.0), 0, 0))));
+  }
+}
@@ -0,0 +1,90 @@
+package frc.robot.subsystems.vision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CoralTrackerTest {
+  private static final double FRAME_PERIOD = 0.05;
+  private static final double NOISE = 0.1;
+
+  private final Random random = new Random(2025);
+  private CoralTracker tracker;
+
+  @BeforeEach
+  void setUp() {
+    tracker = new CoralTracker(8, 0.05, 0.5, 3, 1.0);
+  }
+
+  /** Feeds one frame of noisy synthetic detections of coral at the given positions. */
+  private void detect(int frame, double... positions) {
+    double t = frame * FRAME_PERIOD;
+    tracker.predict(t);
+    for (int i = 0; i < positions.length; i += 2) {
+      tracker.update(
+          t,
+          positions[i] + random.nextGaussian() * NOISE,
+          positions[i + 1] + random.nextGaussian() * NOISE,
+          NOISE * NOISE);
+    }
+  }
+
+  @Test
+  void noisyDetectionsConvergeOnCoral() {
+    for (int frame = 0; frame < 40; frame++) {
+      detect(frame, 3.0, 2.0);
+    }
+
+    assertEquals(1, tracker.getCount());
+    assertTrue(tracker.isConfirmed(0));
+    assertEquals(3.0, tracker.getX(0), 0.05);
+    assertEquals(2.0, tracker.getY(0), 0.05);
+  }
+
+  @Test
+  void separateCoralGetSeparateTracks() {
+    for (int frame = 0; frame < 10; frame++) {
+      detect(frame, 3.0, 2.0, 6.0, 5.0);
+    }
+
+    assertEquals(2, tracker.getConfirmedCount());
+    int nearest = tracker.findNearest(5.5, 5.5, 2.0, true);
+    assertEquals(6.0, tracker.getX(nearest), 0.1);
+    assertEquals(5.0, tracker.getY(nearest), 0.1);
+  }
+
+  @Test
+  void singleDetectionIsNotConfirmed() {
+    detect(0, 3.0, 2.0);
+
+    assertEquals(1, tracker.getCount());
+    assertFalse(tracker.isConfirmed(0));
+    assertEquals(-1, tracker.findNearest(3.0, 2.0, 1.0, true));
+  }
+
+  @Test
+  void unseenTrackIsDropped() {
+    for (int frame = 0; frame < 5; frame++) {
+      detect(frame, 3.0, 2.0);
+    }
+
+    // Nothing is detected for longer than the timeout
+    detect(40);
+    assertEquals(0, tracker.getCount());
+  }
+
+  @Test
+  void removeNearClearsPickedUpCoral() {
+    for (int frame = 0; frame < 5; frame++) {
+      detect(frame, 3.0, 2.0, 6.0, 5.0);
+    }
+
+    tracker.removeNear(3.0, 2.0, 0.5);
+    assertEquals(1, tracker.getCount());
+    assertEquals(6.0, tracker.getX(0), 0.2);
+  }
+}
@@ -0,0 +1,83 @@
+package frc.robot.subsystems.vision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose3d;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+import org.photonvision.targeting.TargetCorner;
+
+class ObservationBufferTest {
+  private static final int TARGETS = 12;
+
+  private final List<TargetCorner> corners = new ArrayList<>();
+  private final Pose3d tagPose = new Pose3d();
+  private final PoseObservation observation =
+      new PoseObservation(
+          new Pose3d(), 1.0, 0.0, 7, VecBuilder.fill(1, 1, 1), PoseStrategy.LOWEST_AMBIGUITY);
+
+  ObservationBufferTest() {
+    for (int i = 0; i < 4; i++) {
+      corners.add(new TargetCorner(i * 10.0, i * 20.0));
+    }
+  }
+
+  /** Refills a buffer the way one camera update does. */
+  private void fill(ObservationBuffer buffer) {
+    buffer.clear();
+    for (int t = 0; t < TARGETS; t++) {
+      buffer.addCorners(corners);
+      buffer.addId(t);
+      buffer.addTagPose(tagPose);
+    }
+    buffer.addObservation(observation);
+  }
+
+  @Test
+  void clearKeepsNothing() {
+    ObservationBuffer buffer = new ObservationBuffer();
+    fill(buffer);
+    buffer.clear();
+    assertEquals(0, buffer.getCornerCount());
+    assertEquals(0, buffer.getIdCount());
+    assertEquals(0, buffer.getTagPoseCount());
+    assertEquals(0, buffer.getObservationCount());
+  }
+
+  @Test
+  void refillHoldsLatestUpdate() {
+    ObservationBuffer buffer = new ObservationBuffer();
+    fill(buffer);
+    fill(buffer);
+    assertEquals(TARGETS * 4, buffer.getCornerCount());
+    assertEquals(30.0, buffer.getCornerX(TARGETS * 4 - 1), 0.0);
+    assertEquals(60.0, buffer.getCornerY(TARGETS * 4 - 1), 0.0);
+    assertEquals(TARGETS, buffer.getIdCount());
+    assertEquals(TARGETS - 1, buffer.getId(TARGETS - 1));
+    assertEquals(1, buffer.getObservationCount());
+  }
+
+  @Test
+  void refillDoesNotAllocateOnceWarm() {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+
+    ObservationBuffer buffer = new ObservationBuffer();
+    fill(buffer);
+
+    long before = threads.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < 10_000; i++) {
+      fill(buffer);
+    }
+    long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+    // Any per-update allocation would add up to far more than this over ten thousand updates
+    assertTrue(allocated < 16 * 1024, "Allocated " + allocated + " bytes");
+  }
+}
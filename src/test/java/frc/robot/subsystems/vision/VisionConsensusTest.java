@@ -0,0 +1,72 @@
+package frc.robot.subsystems.vision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import frc.robot.helpers.OdometryHistory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class VisionConsensusTest {
+  private static final double FRAME_PERIOD = 0.05;
+
+  private OdometryHistory history;
+  private VisionConsensus consensus;
+
+  @BeforeEach
+  void setUp() {
+    // Odometry drives along x at 1 m/s for two seconds
+    history = new OdometryHistory(256);
+    for (int i = 0; i <= 200; i++) {
+      double t = i * 0.01;
+      history.addSample(t, t, 0.0, 0.0);
+    }
+    consensus = new VisionConsensus(32, 1.0, 0.3, Math.toRadians(8.0), 3);
+  }
+
+  /** Feeds a vision pose at a fixed offset from odometry at the given frame. */
+  private boolean accept(int frame, double offsetX, double offsetY, double offsetTheta) {
+    double t = frame * FRAME_PERIOD;
+    return consensus.accept(t + offsetX, offsetY, offsetTheta, t, history);
+  }
+
+  @Test
+  void acceptsCleanCluster() {
+    // Small noise around a constant offset, as from a well calibrated camera
+    double[] noise = {0.0, 0.05, -0.04, 0.02, -0.06, 0.03, 0.01, -0.02};
+    for (int frame = 0; frame < noise.length; frame++) {
+      assertTrue(accept(frame, 0.5 + noise[frame], 0.2 - noise[frame], 0.05 + noise[frame] / 4));
+    }
+    assertEquals(0, consensus.getRejectedCount());
+  }
+
+  @Test
+  void rejectsLoneOutlier() {
+    for (int frame = 0; frame < 5; frame++) {
+      assertTrue(accept(frame, 0.5, 0.2, 0.0));
+    }
+
+    assertFalse(accept(5, 3.0, -1.0, 0.0));
+    assertTrue(accept(6, 0.5, 0.2, 0.0));
+    assertEquals(1, consensus.getRejectedCount());
+  }
+
+  @Test
+  void acceptsRelocalizationOnceFramesAgree() {
+    for (int frame = 0; frame < 3; frame++) {
+      assertTrue(accept(frame, 0.5, 0.2, 0.0));
+    }
+
+    // Odometry really jumped, the new offset is outvoted until it has as much support as the old
+    assertFalse(accept(3, -1.5, 1.0, 0.0));
+    assertFalse(accept(4, -1.5, 1.0, 0.0));
+    assertTrue(accept(5, -1.5, 1.0, 0.0));
+    assertTrue(accept(6, -1.5, 1.0, 0.0));
+  }
+
+  @Test
+  void acceptsWithoutOdometry() {
+    assertTrue(consensus.accept(0.0, 0.0, 0.0, -1.0, history));
+  }
+}
@@ -0,0 +1,75 @@
+package frc.robot.subsystems.vision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import frc.robot.helpers.OdometryHistory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class VisionGateTest {
+  private OdometryHistory history;
+  private VisionGate gate;
+
+  @BeforeEach
+  void setUp() {
+    // Odometry sits still at (2, 2) for three seconds
+    history = new OdometryHistory(512);
+    for (int i = 0; i <= 300; i++) {
+      history.addSample(i * 0.01, 2.0, 2.0, 0.0);
+    }
+    gate = new VisionGate(0.5, 0.5);
+  }
+
+  /** Passes a pose through the gate and fuses it, as fusion does for an accepted pose. */
+  private boolean fuse(double x, double y, double timestamp) {
+    if (!gate.accept(x, y, timestamp, history)) {
+      return false;
+    }
+    gate.recordFix();
+    return true;
+  }
+
+  @Test
+  void acceptsFirstFix() {
+    assertTrue(fuse(6.0, 1.0, 1.0));
+  }
+
+  @Test
+  void rejectsImpossibleJump() {
+    assertTrue(fuse(2.0, 2.0, 1.0));
+
+    // 3 m in 0.1 s is far beyond 0.5 m plus 0.5 m/s of drift for 0.1 s
+    assertFalse(fuse(5.0, 2.0, 1.1));
+    assertTrue(fuse(2.2, 2.1, 1.15));
+    assertEquals(1, gate.getRejectedCount());
+  }
+
+  @Test
+  void allowanceGrowsWithDriftSinceFix() {
+    assertTrue(fuse(2.0, 2.0, 1.0));
+    assertFalse(fuse(3.2, 2.0, 1.5));
+    assertFalse(fuse(3.2, 2.0, 2.0));
+
+    // After 1.5 s odometry could have drifted 0.75 m, enough for the 1.2 m jump with the tolerance
+    assertTrue(fuse(3.2, 2.0, 2.5));
+    assertEquals(2, gate.getRejectedCount());
+  }
+
+  @Test
+  void unfusedPoseDoesNotBecomeFix() {
+    assertTrue(fuse(2.0, 2.0, 1.0));
+
+    // Passes the gate but is rejected later in fusion, so the fix stays at (2, 2)
+    assertTrue(gate.accept(2.5, 2.0, 1.1, history));
+    assertFalse(fuse(3.0, 2.0, 1.2));
+  }
+
+  @Test
+  void resetForgetsLastFix() {
+    assertTrue(fuse(2.0, 2.0, 1.0));
+    gate.reset();
+    assertTrue(fuse(5.0, 2.0, 1.1));
+  }
+}
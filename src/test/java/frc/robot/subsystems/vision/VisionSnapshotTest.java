@@ -0,0 +1,62 @@
+package frc.robot.subsystems.vision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import frc.robot.subsystems.vision.Vision.AprilTagIOInputs;
+import org.junit.jupiter.api.Test;
+
+class VisionSnapshotTest {
+  private final VisionSnapshot snapshot = new VisionSnapshot();
+
+  /** Builds the inputs of one poll that processed the given results and saw the given tags. */
+  private static AprilTagIOInputs poll(int resultCount, int... ids) {
+    AprilTagIOInputs inputs = new AprilTagIOInputs();
+    inputs.resultCount = resultCount;
+    for (int id : ids) {
+      inputs.valid.addId(id);
+    }
+    return inputs;
+  }
+
+  @Test
+  void mergesEveryPollOfALoop() {
+    snapshot.begin();
+    snapshot.add(poll(1, 3));
+    snapshot.add(poll(1, 7, 8));
+    assertTrue(snapshot.end());
+
+    assertEquals(3, snapshot.getValid().getIdCount());
+    assertEquals(3, snapshot.getValid().getId(0));
+    assertEquals(8, snapshot.getValid().getId(2));
+  }
+
+  @Test
+  void pollWithoutResultsKeepsDetections() {
+    snapshot.begin();
+    snapshot.add(poll(1, 3));
+    snapshot.end();
+    long version = snapshot.getVersion();
+
+    snapshot.begin();
+    snapshot.add(poll(0));
+    assertFalse(snapshot.end());
+
+    assertEquals(version, snapshot.getVersion());
+    assertEquals(1, snapshot.getValid().getIdCount());
+  }
+
+  @Test
+  void resultsWithoutTagsClearDetections() {
+    snapshot.begin();
+    snapshot.add(poll(1, 3));
+    snapshot.end();
+
+    snapshot.begin();
+    snapshot.add(poll(1));
+    assertTrue(snapshot.end());
+
+    assertEquals(0, snapshot.getValid().getIdCount());
+  }
+}
@@ -0,0 +1,56 @@
+package frc.robot.subsystems.vision.scoring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import org.junit.jupiter.api.Test;
+
+class ScorerReplayTest {
+  /** Scores every observation with the same standard deviations. */
+  private static final ObservationScorer FIXED =
+      (features, stdDevs) -> {
+        stdDevs[0] = 0.1;
+        stdDevs[1] = 0.2;
+        stdDevs[2] = 0.05;
+        return features.tagCount > 0;
+      };
+
+  private static ObservationFeatures features(int tagCount) {
+    ObservationFeatures features = new ObservationFeatures();
+    features.tagCount = tagCount;
+    return features;
+  }
+
+  @Test
+  void pairsObservationsWithReferenceAtCaptureTime() {
+    ScorerReplay.Recorder recorder = new ScorerReplay.Recorder(16);
+    recorder.addReference(0.0, new Pose2d(1.0, 1.0, new Rotation2d()));
+
+    // Captured halfway between two references, the robot was at x = 1.5
+    recorder.record(features(2), new Pose2d(1.6, 1.2, new Rotation2d()), 0.01);
+    recorder.addReference(0.02, new Pose2d(2.0, 1.0, new Rotation2d()));
+
+    assertEquals(1, recorder.getSamples().size());
+    ScorerReplay.Result result = ScorerReplay.evaluate(FIXED, recorder.getSamples());
+    assertEquals(1, result.accepted());
+    assertEquals(1.0, result.normalizedErrorX(), 1e-9);
+    assertEquals(1.0, result.normalizedErrorY(), 1e-9);
+    assertEquals(0.0, result.normalizedErrorTheta(), 1e-9);
+  }
+
+  @Test
+  void keepsOnlyRecentSamples() {
+    ScorerReplay.Recorder recorder = new ScorerReplay.Recorder(4);
+    recorder.addReference(0.0, new Pose2d());
+    for (int i = 1; i <= 10; i++) {
+      recorder.record(features(i % 2), new Pose2d(), i * 0.01);
+      recorder.addReference(i * 0.01, new Pose2d());
+    }
+
+    assertEquals(4, recorder.getSamples().size());
+    ScorerReplay.Result result = ScorerReplay.evaluate(FIXED, recorder.getSamples());
+    assertEquals(2, result.accepted());
+    assertEquals(2, result.rejected());
+  }
+}